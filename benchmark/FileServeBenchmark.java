@@ -0,0 +1,204 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 文件下载基准测试，对比三种把文件写入socket的方式，接收端是本机回环连接，读取后丢弃
+ * 原方式：FileInputStream每次读1KB写入输出流，输出流用8KB的BufferedOutputStream模拟tomcat的响应缓冲
+ * 缓冲输出：和FileSendUtils不支持sendfile时相同，FileChannel读入线程复用的64KB缓冲再写入输出流
+ * sendfile：FileChannel.transferTo直接写入SocketChannel，和tomcat nio的sendfile相同，数据不经过jvm堆
+ * 每种方式预热后执行多次，输出吞吐量的中位数、当前线程分配的字节数和gc次数
+ * <p>
+ * javac -encoding UTF-8 FileServeBenchmark.java && java -DsizeMb=256 -Druns=5 FileServeBenchmark
+ */
+public class FileServeBenchmark {
+
+    private static final int SIZE_MB = Integer.getInteger("sizeMb", 256);
+
+    private static final int RUNS = Integer.getInteger("runs", 5);
+
+    private static final int WARMUP = Integer.getInteger("warmup", 2);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private interface Sender {
+        void send(File file, SocketChannel socket) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("file_serve_bench_", ".bin");
+        ExecutorService sinkPool = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            createFile(file, SIZE_MB * 1024L * 1024L);
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            System.out.printf("文件:%dMB，预热%d次，执行%d次取中位数%n", SIZE_MB, WARMUP, RUNS);
+            System.out.printf("%-12s %10s %18s %8s %10s%n", "方式", "MB/s", "分配(bytes/次)", "gc次数", "gc(ms)");
+            run("原方式1KB", file, server, sinkPool, FileServeBenchmark::legacy);
+            run("缓冲输出64KB", file, server, sinkPool, FileServeBenchmark::buffered);
+            run("sendfile", file, server, sinkPool, FileServeBenchmark::transferTo);
+        } finally {
+            sinkPool.shutdownNow();
+            file.delete();
+        }
+    }
+
+    private static void run(String name, File file, ServerSocketChannel server, ExecutorService sinkPool, Sender sender) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            sendOnce(file, server, sinkPool, sender);
+        }
+        double[] throughput = new double[RUNS];
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            long received = sendOnce(file, server, sinkPool, sender);
+            long elapsed = System.nanoTime() - start;
+            if (received != file.length()) {
+                throw new IllegalStateException(name + " 接收字节数不一致:" + received);
+            }
+            throughput[i] = received / 1024.0 / 1024.0 / (elapsed / 1e9);
+        }
+        long allocated = allocatedBefore < 0 ? -1 : (allocatedBytes() - allocatedBefore) / RUNS;
+        Arrays.sort(throughput);
+        System.out.printf("%-12s %10.1f %18d %8d %10d%n", name, throughput[RUNS / 2], allocated, gcCount() - gcCountBefore,
+                gcTime() - gcTimeBefore);
+    }
+
+    /**
+     * 建立一次连接并发送整个文件，等接收端读完
+     *
+     * @return 接收端收到的字节数
+     */
+    private static long sendOnce(File file, ServerSocketChannel server, ExecutorService sinkPool, Sender sender) throws Exception {
+        Future<Long> sink;
+        try (SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+            SocketChannel accepted = server.accept();
+            sink = sinkPool.submit(() -> drain(accepted));
+            sender.send(file, client);
+        }
+        return sink.get();
+    }
+
+    private static long drain(SocketChannel socket) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long total = 0;
+        try (SocketChannel channel = socket) {
+            int len;
+            while ((len = channel.read(buffer)) != -1) {
+                total += len;
+                buffer.clear();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 原来的readFile
+     */
+    private static void legacy(File file, SocketChannel socket) throws IOException {
+        OutputStream out = new BufferedOutputStream(socket.socket().getOutputStream(), 8192);
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] byteData = new byte[1024];
+            int len;
+            while ((len = in.read(byteData)) != -1) {
+                out.write(byteData, 0, len);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * FileSendUtils不支持sendfile时的输出
+     */
+    private static void buffered(File file, SocketChannel socket) throws IOException {
+        OutputStream out = new BufferedOutputStream(socket.socket().getOutputStream(), 8192);
+        byte[] buffer = BUFFER.get();
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            long end = channel.size();
+            while (position < end) {
+                byteBuffer.clear();
+                byteBuffer.limit((int) Math.min(buffer.length, end - position));
+                int len = channel.read(byteBuffer, position);
+                if (len == -1) {
+                    break;
+                }
+                out.write(buffer, 0, len);
+                position += len;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * tomcat nio sendfile
+     */
+    private static void transferTo(File file, SocketChannel socket) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            long end = channel.size();
+            while (position < end) {
+                position += channel.transferTo(position, end - position, socket);
+            }
+        }
+    }
+
+    private static void createFile(File file, long size) throws IOException {
+        byte[] block = new byte[1024 * 1024];
+        new Random(1).nextBytes(block);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            for (long written = 0; written < size; written += block.length) {
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+    }
+
+    /**
+     * 当前线程分配的字节数，jvm不支持时返回-1
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 视频切片基准测试，对比原来的多步切片和单次ffmpeg切片的耗时和写入字节数
+ * 原来的切片：ffprobe获取编码，hevc先完整转码为h264替换原文件，再转封装为index.ts，最后切片，index.ts切片后删除
+ * 单次切片：和HlsPackager单码率ts切片使用相同的参数，h264直接复制，其他编码在同一次执行中转码，原文件不变
+ * 测试视频由ffmpeg生成，h264和hevc（有libx265时）各一个，每种切片执行多次取中位数
+ * <p>
+ * 需要ffmpeg和ffprobe在PATH中：
+ * javac -encoding UTF-8 HlsPackageBenchmark.java && java -Dduration=60 -Druns=3 -Dsize=1920x1080 HlsPackageBenchmark
+ */
+public class HlsPackageBenchmark {
+
+    private static final int DURATION = Integer.getInteger("duration", 60);
+
+    private static final int RUNS = Integer.getInteger("runs", 3);
+
+    private static final String SIZE = System.getProperty("size", "1920x1080");
+
+    private static final String FILE_ID = "bench00001";
+
+    private static final Pattern CODEC_NAME = Pattern.compile("\"codec_name\"\\s*:\\s*\"(\\w+)\"");
+
+    public static void main(String[] args) throws Exception {
+        Path workDir = Files.createTempDirectory("hls_bench_");
+        try {
+            List<String> codecs = new ArrayList<>(Collections.singletonList("h264"));
+            if (run(true, "ffmpeg", "-hide_banner", "-encoders").contains("libx265")) {
+                codecs.add("hevc");
+            } else {
+                System.out.println("ffmpeg没有libx265，跳过hevc");
+            }
+            System.out.printf("视频:%s %d秒，每种切片执行%d次取中位数%n", SIZE, DURATION, RUNS);
+            System.out.printf("%-6s %-10s %12s %16s%n", "编码", "切片方式", "耗时(ms)", "写入(bytes)");
+            for (String codec : codecs) {
+                Path source = generate(workDir, codec);
+                long[] legacy = measure(workDir, source, true);
+                long[] single = measure(workDir, source, false);
+                System.out.printf("%-6s %-10s %12d %16d%n", codec, "原多步", legacy[0], legacy[1]);
+                System.out.printf("%-6s %-10s %12d %16d%n", codec, "单次", single[0], single[1]);
+                System.out.printf("%-6s 耗时减少 %.1f%%，写入减少 %.1f%%%n", codec, 100.0 * (legacy[0] - single[0]) / legacy[0],
+                        100.0 * (legacy[1] - single[1]) / legacy[1]);
+            }
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    /**
+     * 生成测试视频，带音频
+     */
+    private static Path generate(Path workDir, String codec) throws IOException, InterruptedException {
+        Path source = workDir.resolve("source_" + codec + ".mp4");
+        String encoder = "hevc".equals(codec) ? "libx265" : "libx264";
+        run(false, "ffmpeg", "-y", "-f", "lavfi", "-i", "testsrc2=size=" + SIZE + ":rate=30", "-f", "lavfi", "-i",
+                "sine=frequency=440:sample_rate=48000", "-t", String.valueOf(DURATION), "-c:v", encoder, "-preset", "veryfast",
+                "-pix_fmt", "yuv420p", "-c:a", "aac", "-shortest", source.toString());
+        return source;
+    }
+
+    /**
+     * @return [耗时中位数, 写入字节数中位数]
+     */
+    private static long[] measure(Path workDir, Path source, boolean legacy) throws IOException, InterruptedException {
+        long[] times = new long[RUNS];
+        long[] bytes = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            Path runDir = Files.createDirectories(workDir.resolve("run_" + (legacy ? "legacy_" : "single_") + i));
+            //原来的切片会替换原文件，复制一份，复制不计入
+            Path video = runDir.resolve(FILE_ID + ".mp4");
+            Files.copy(source, video, StandardCopyOption.REPLACE_EXISTING);
+            File tsFolder = runDir.resolve(FILE_ID).toFile();
+            tsFolder.mkdirs();
+            long start = System.nanoTime();
+            long written = legacy ? legacyPipeline(video.toString(), tsFolder) : singlePass(video.toString(), tsFolder);
+            times[i] = (System.nanoTime() - start) / 1000000;
+            bytes[i] = written;
+            deleteRecursively(runDir);
+        }
+        Arrays.sort(times);
+        Arrays.sort(bytes);
+        return new long[]{times[RUNS / 2], bytes[RUNS / 2]};
+    }
+
+    /**
+     * 原来的cutFile4Video
+     *
+     * @return 写入的字节数，包括转码后的文件和index.ts
+     */
+    private static long legacyPipeline(String videoFilePath, File tsFolder) throws IOException, InterruptedException {
+        long written = 0;
+        String result = run(true, "ffprobe", "-v", "error", "-select_streams", "v:0", "-show_entries", "stream=codec_name", videoFilePath);
+        result = result.replace("\n", "");
+        result = result.substring(result.indexOf("=") + 1);
+        String codec = result.substring(0, result.indexOf("["));
+        if ("hevc".equals(codec)) {
+            String newFileName = videoFilePath.substring(0, videoFilePath.lastIndexOf(".")) + "_" + videoFilePath.substring(videoFilePath.lastIndexOf("."));
+            new File(videoFilePath).renameTo(new File(newFileName));
+            run(false, "ffmpeg", "-i", newFileName, "-c:v", "libx264", "-crf", "20", videoFilePath);
+            written += new File(videoFilePath).length();
+            new File(newFileName).delete();
+        }
+        String tsPath = tsFolder + "/index.ts";
+        run(false, "ffmpeg", "-y", "-i", videoFilePath, "-vcodec", "copy", "-acodec", "copy", "-bsf:v", "h264_mp4toannexb", tsPath);
+        written += new File(tsPath).length();
+        run(false, "ffmpeg", "-i", tsPath, "-c", "copy", "-map", "0", "-f", "segment", "-segment_list", tsFolder.getPath() + "/index.m3u8",
+                "-segment_time", "30", tsFolder.getPath() + "/" + FILE_ID + "_%4d.ts");
+        new File(tsPath).delete();
+        return written + sizeOf(tsFolder);
+    }
+
+    /**
+     * HlsPackager单码率ts切片，视频信息获取和转码时一样使用一次ffprobe
+     *
+     * @return 写入的字节数
+     */
+    private static long singlePass(String videoFilePath, File tsFolder) throws IOException, InterruptedException {
+        String probe = run(true, "ffprobe", "-v", "error", "-print_format", "json", "-show_format", "-show_streams", videoFilePath);
+        Matcher matcher = CODEC_NAME.matcher(probe);
+        String videoCodec = matcher.find() ? matcher.group(1) : null;
+        List<String> cmd = new ArrayList<>(Arrays.asList("ffmpeg", "-y", "-i", videoFilePath, "-map", "0:v:0", "-map", "0:a:0?"));
+        if ("h264".equals(videoCodec)) {
+            cmd.addAll(Arrays.asList("-c:v", "copy", "-bsf:v", "h264_mp4toannexb"));
+        } else {
+            cmd.addAll(Arrays.asList("-c:v", "libx264", "-crf", "20"));
+        }
+        cmd.addAll(Arrays.asList("-c:a", "copy", "-f", "hls", "-hls_time", "30", "-hls_list_size", "0",
+                "-hls_segment_filename", tsFolder.getPath() + "/" + FILE_ID + "_%04d.ts", tsFolder.getPath() + "/index.m3u8"));
+        run(false, cmd.toArray(new String[0]));
+        return sizeOf(tsFolder);
+    }
+
+    /**
+     * 执行命令，失败时抛出异常
+     *
+     * @param capture 是否返回输出
+     */
+    private static String run(boolean capture, String... cmd) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(cmd);
+        processBuilder.redirectErrorStream(!capture);
+        File log = File.createTempFile("hls_bench_", ".log");
+        try {
+            if (capture) {
+                processBuilder.redirectError(log);
+            } else {
+                processBuilder.redirectOutput(log);
+            }
+            Process process = processBuilder.start();
+            String output = "";
+            if (capture) {
+                try (InputStream in = process.getInputStream()) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int len;
+                    while ((len = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, len);
+                    }
+                    output = out.toString("UTF-8");
+                }
+            }
+            if (process.waitFor() != 0) {
+                throw new IOException("执行失败:" + String.join(" ", cmd) + "\n" + new String(Files.readAllBytes(log.toPath()), "UTF-8"));
+            }
+            return output;
+        } finally {
+            log.delete();
+        }
+    }
+
+    private static long sizeOf(File folder) {
+        long size = 0;
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
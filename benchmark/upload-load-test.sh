@@ -0,0 +1,76 @@
+#!/usr/bin/env bash
+#
+# 上传连接池压测：同时发起多个慢速分片上传，期间反复请求需要数据库的接口，统计响应时间
+# 分片写入在事务中时，每个慢速上传占用一个数据库连接，上传数超过连接池大小后其他请求要等待连接超时
+#
+# 使用请求体上传接口（PUT /file/uploadChunk），请求体边接收边写入，限速后单个分片会持续较长时间
+# multipart接口在进入业务方法前已经由容器接收完整个请求，不能模拟慢速上传
+#
+# 环境变量：
+#   BASE_URL      服务地址，默认 http://localhost:7090/api
+#   COOKIE        已登录用户的会话，如 JSESSIONID=xxxx
+#   UPLOADERS     同时上传数，默认 20，需要大于 spring.datasource.hikari.maximum-pool-size
+#   CHUNK_MB      分片大小（MB），默认 15
+#   RATE          每个上传的限速，curl --limit-rate 格式，默认 200k，15MB分片约需75秒
+#   PROBES        探测请求数，默认 30，每秒一次
+#   MAX_PROBE_MS  探测请求最大允许耗时（毫秒），默认 2000，超过时失败
+#
+# 上传的分片序号为 1/2，不会触发合并，结束后由过期清理回收预占空间
+
+set -u
+
+BASE_URL=${BASE_URL:-http://localhost:7090/api}
+COOKIE=${COOKIE:?请设置已登录用户的会话 COOKIE，如 JSESSIONID=xxxx}
+UPLOADERS=${UPLOADERS:-20}
+CHUNK_MB=${CHUNK_MB:-15}
+RATE=${RATE:-200k}
+PROBES=${PROBES:-30}
+MAX_PROBE_MS=${MAX_PROBE_MS:-2000}
+
+WORK_DIR=$(mktemp -d)
+trap 'kill $(jobs -p) 2>/dev/null; rm -rf "$WORK_DIR"' EXIT
+
+CHUNK_FILE="$WORK_DIR/chunk"
+head -c $((CHUNK_MB * 1024 * 1024)) /dev/urandom > "$CHUNK_FILE"
+
+echo "启动 $UPLOADERS 个上传，每个 ${CHUNK_MB}MB，限速 $RATE"
+for i in $(seq 1 "$UPLOADERS"); do
+    md5=$(head -c 16 /dev/urandom | od -An -tx1 | tr -d ' \n')
+    curl -s -o "$WORK_DIR/upload_$i.json" -X PUT "$BASE_URL/file/uploadChunk" \
+        -H "Cookie: $COOKIE" \
+        -H "Content-Type: application/octet-stream" \
+        -H "X-File-Name: load_test_$i.bin" \
+        -H "X-File-Pid: 0" \
+        -H "X-File-Md5: $md5" \
+        -H "X-Chunk-Index: 1" \
+        -H "X-Chunks: 2" \
+        --limit-rate "$RATE" \
+        --data-binary "@$CHUNK_FILE" &
+done
+
+#等待上传请求都已进入业务方法
+sleep 3
+
+echo "探测请求：POST /file/loadDataList"
+: > "$WORK_DIR/probe.txt"
+for i in $(seq 1 "$PROBES"); do
+    seconds=$(curl -s -o /dev/null -w '%{time_total}' -X POST "$BASE_URL/file/loadDataList" \
+        -H "Cookie: $COOKIE" --data "category=all&filePid=0&pageNo=1&pageSize=15")
+    ms=$(awk -v s="$seconds" 'BEGIN { printf "%d", s * 1000 }')
+    echo "$ms" >> "$WORK_DIR/probe.txt"
+    echo "  第 $i 次: ${ms}ms"
+    sleep 1
+done
+
+sort -n "$WORK_DIR/probe.txt" | awk -v max_allowed="$MAX_PROBE_MS" '
+    { v[NR] = $1; sum += $1 }
+    END {
+        p50 = v[int((NR + 1) / 2)]
+        p95 = v[int(NR * 0.95 + 0.5) > 0 ? int(NR * 0.95 + 0.5) : 1]
+        printf "探测请求 %d 次，平均 %dms，p50 %dms，p95 %dms，最大 %dms\n", NR, sum / NR, p50, p95, v[NR]
+        if (v[NR] > max_allowed) {
+            printf "失败：最大耗时超过 %dms，连接池可能被上传占满\n", max_allowed
+            exit 1
+        }
+        print "通过：上传期间数据库请求没有等待连接"
+    }'
@@ -49,6 +49,13 @@ CREATE TABLE `file_info` (
   `status` tinyint(1) DEFAULT NULL COMMENT '0:转码中 1转码失败 2:转码成功',
   `recovery_time` datetime DEFAULT NULL COMMENT '回收站时间',
   `del_flag` tinyint(1) DEFAULT '2' COMMENT '删除标记 0:删除  1:回收站  2:正常',
+  `duration` bigint(20) DEFAULT NULL COMMENT '时长，毫秒',
+  `width` int(11) DEFAULT NULL COMMENT '视频宽度',
+  `height` int(11) DEFAULT NULL COMMENT '视频高度',
+  `video_codec` varchar(20) DEFAULT NULL COMMENT '视频编码',
+  `audio_codec` varchar(20) DEFAULT NULL COMMENT '音频编码',
+  `bit_rate` bigint(20) DEFAULT NULL COMMENT '码率，bps',
+  `audio_channels` int(11) DEFAULT NULL COMMENT '音频声道数',
   PRIMARY KEY (`file_id`,`user_id`),
   KEY `idx_create_time` (`create_time`),
   KEY `idx_user_id` (`user_id`),
@@ -77,6 +84,28 @@ CREATE TABLE `file_share` (
   KEY `idx_share_time` (`share_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='分享信息';
 
+-- ----------------------------
+-- Table structure for file_transfer_job
+-- ----------------------------
+DROP TABLE IF EXISTS `file_transfer_job`;
+CREATE TABLE `file_transfer_job` (
+  `job_id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '任务ID',
+  `file_id` varchar(10) NOT NULL COMMENT '文件ID',
+  `user_id` varchar(10) NOT NULL COMMENT '用户ID',
+  `priority` int(11) DEFAULT '0' COMMENT '优先级，越大越先执行',
+  `status` tinyint(1) DEFAULT '0' COMMENT '0:待执行 1:执行中 2:已完成 3:已失败',
+  `attempt_count` int(11) DEFAULT '0' COMMENT '已执行次数',
+  `next_run_time` datetime DEFAULT NULL COMMENT '下次可执行时间',
+  `lock_owner` varchar(64) DEFAULT NULL COMMENT '执行节点',
+  `lock_expire_time` datetime DEFAULT NULL COMMENT '执行超时时间，超时后其他节点可以重新领取',
+  `create_time` datetime DEFAULT NULL COMMENT '创建时间',
+  `last_update_time` datetime DEFAULT NULL COMMENT '最后更新时间',
+  PRIMARY KEY (`job_id`),
+  UNIQUE KEY `idx_file_user` (`file_id`,`user_id`),
+  KEY `idx_status_run_time` (`status`,`next_run_time`),
+  KEY `idx_status_lock_expire` (`status`,`lock_expire_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='文件转码任务';
+
 -- ----------------------------
 -- Table structure for user_info
 -- ----------------------------
@@ -1,5 +1,7 @@
 package com.easypan;
 
+import com.easypan.component.FileMd5Index;
+import com.easypan.component.FileTransferJobQueue;
 import com.easypan.component.RedisComponent;
 import com.easypan.exception.BusinessException;
 import org.slf4j.Logger;
@@ -22,11 +24,19 @@ public class InitRun implements ApplicationRunner {
     @Resource
     private RedisComponent redisComponent;
 
+    @Resource
+    private FileMd5Index fileMd5Index;
+
+    @Resource
+    private FileTransferJobQueue fileTransferJobQueue;
+
     @Override
     public void run(ApplicationArguments args) {
         try {
             dataSource.getConnection();
             redisComponent.getSysSettingsDto();
+            fileMd5Index.rebuild();
+            fileTransferJobQueue.sweep();
             logger.error("服务启动成功，可以开始愉快的开发了");
         } catch (Exception e) {
             logger.error("数据库或者redis设置失败，请检查配置");
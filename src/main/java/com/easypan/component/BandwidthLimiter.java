@@ -0,0 +1,186 @@
+package com.easypan.component;
+
+import com.easypan.entity.config.AppConfig;
+import com.easypan.entity.dto.BandwidthLimitDto;
+import com.easypan.entity.dto.SessionWebUserDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 上传下载限速，令牌桶保存在redis中，多个节点共用同一个额度
+ * 按用户类型和分享链接配置速度，每次取一段字节数的令牌，令牌不足时等待
+ */
+@Component("bandwidthLimiter")
+public class BandwidthLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BandwidthLimiter.class);
+
+    private static final String KEY_DOWNLOAD_USER = "download:user:";
+
+    private static final String KEY_DOWNLOAD_SHARE = "download:share:";
+
+    private static final String KEY_UPLOAD_USER = "upload:user:";
+
+    /**
+     * 每次取令牌的最大字节数，减少访问redis的次数
+     */
+    private static final long MAX_ACQUIRE_SIZE = 1024 * 1024;
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private RedisComponent redisComponent;
+
+    public BandwidthLimitDto getUserDownloadLimit(SessionWebUserDto webUserDto) {
+        Long rate = Boolean.TRUE.equals(webUserDto.getAdmin()) ? appConfig.getBandwidthDownloadAdminRate() : appConfig.getBandwidthDownloadUserRate();
+        return buildLimit(KEY_DOWNLOAD_USER + webUserDto.getUserId(), rate);
+    }
+
+    public BandwidthLimitDto getShareDownloadLimit(String shareId) {
+        return buildLimit(KEY_DOWNLOAD_SHARE + shareId, appConfig.getBandwidthDownloadShareRate());
+    }
+
+    public BandwidthLimitDto getUserUploadLimit(SessionWebUserDto webUserDto) {
+        Long rate = Boolean.TRUE.equals(webUserDto.getAdmin()) ? appConfig.getBandwidthUploadAdminRate() : appConfig.getBandwidthUploadUserRate();
+        return buildLimit(KEY_UPLOAD_USER + webUserDto.getUserId(), rate);
+    }
+
+    private BandwidthLimitDto buildLimit(String key, Long rateKb) {
+        if (rateKb == null || rateKb <= 0) {
+            return null;
+        }
+        return new BandwidthLimitDto(key, rateKb * 1024);
+    }
+
+    /**
+     * 每次取令牌的字节数，约为0.1秒的流量
+     */
+    public long getAcquireSize(BandwidthLimitDto limit) {
+        return Math.max(1, Math.min(MAX_ACQUIRE_SIZE, limit.getRate() / 10));
+    }
+
+    /**
+     * 取出字节数对应的令牌，不足时等待，redis异常时不限速
+     */
+    public void acquire(BandwidthLimitDto limit, long bytes) {
+        if (limit == null || bytes <= 0) {
+            return;
+        }
+        long waitMillis;
+        try {
+            waitMillis = redisComponent.acquireBandwidth(limit.getKey(), limit.getRate(), limit.getRate(), bytes);
+        } catch (Exception e) {
+            logger.error("获取限速令牌失败:{}", limit.getKey(), e);
+            return;
+        }
+        if (waitMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(waitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 退回没有用完的令牌
+     */
+    public void refund(BandwidthLimitDto limit, long bytes) {
+        if (limit == null || bytes <= 0) {
+            return;
+        }
+        try {
+            redisComponent.acquireBandwidth(limit.getKey(), limit.getRate(), limit.getRate(), -bytes);
+        } catch (Exception e) {
+            logger.error("退回限速令牌失败:{}", limit.getKey(), e);
+        }
+    }
+
+    public Budget newBudget(BandwidthLimitDto limit) {
+        return limit == null ? null : new Budget(limit);
+    }
+
+    /**
+     * 按限速读取输入流，为空时不限速
+     */
+    public InputStream limitStream(InputStream inputStream, BandwidthLimitDto limit) {
+        if (limit == null) {
+            return inputStream;
+        }
+        Budget budget = new Budget(limit);
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                budget.available(1);
+                int b = super.read();
+                if (b != -1) {
+                    budget.consume(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int readSize = super.read(b, off, budget.available(len));
+                if (readSize > 0) {
+                    budget.consume(readSize);
+                }
+                return readSize;
+            }
+
+            @Override
+            public void close() throws IOException {
+                budget.release();
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * 本地额度，每次从令牌桶取一段，用完后再取，按实际读写的字节数扣减，结束时退回没有用完的部分
+     * 只在一个线程中使用
+     */
+    public class Budget {
+
+        private final BandwidthLimitDto limit;
+
+        private final long acquireSize;
+
+        private long remaining;
+
+        private Budget(BandwidthLimitDto limit) {
+            this.limit = limit;
+            this.acquireSize = getAcquireSize(limit);
+        }
+
+        /**
+         * 本次最多可以读写的字节数，额度用完时先取令牌，令牌不足时等待
+         */
+        public int available(int len) {
+            if (remaining <= 0) {
+                acquire(limit, acquireSize);
+                remaining += acquireSize;
+            }
+            return (int) Math.min(len, remaining);
+        }
+
+        public void consume(long bytes) {
+            remaining -= bytes;
+        }
+
+        public void release() {
+            if (remaining > 0) {
+                refund(limit, remaining);
+                remaining = 0;
+            }
+        }
+    }
+}
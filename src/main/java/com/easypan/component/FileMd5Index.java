@@ -0,0 +1,239 @@
+package com.easypan.component;
+
+import com.easypan.entity.config.AppConfig;
+import com.easypan.entity.dto.Md5IndexStatsDto;
+import com.easypan.entity.enums.FileStatusEnums;
+import com.easypan.entity.po.FileInfo;
+import com.easypan.entity.query.FileInfoQuery;
+import com.easypan.entity.query.SimplePage;
+import com.easypan.mappers.FileInfoMapper;
+import com.easypan.utils.StringTools;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 秒传md5索引
+ * 布隆过滤器判断md5一定不存在时直接跳过数据库查询，本地缓存md5对应的文件信息，命中时不再查询数据库
+ * 布隆过滤器只记录本节点启动后新增的文件和启动时已有的文件，其他节点新增的文件会被判定为不存在，只会失去秒传不会出错
+ */
+@Component("fileMd5Index")
+public class FileMd5Index {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileMd5Index.class);
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private FileInfoMapper<FileInfo, FileInfoQuery> fileInfoMapper;
+
+    /**
+     * 位数组、位数和哈希次数一起替换，并发读写时不会读到新的位数和旧的位数组
+     */
+    private volatile Bloom bloom = new Bloom(64, 1);
+
+    /**
+     * 重建完成前布隆过滤器不可用，所有查询都走缓存和数据库
+     */
+    private volatile boolean bloomReady = false;
+
+    private volatile Map<String, FileInfo> md5Cache = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private final AtomicLong bloomSkipCount = new AtomicLong();
+
+    private final AtomicLong cacheHitCount = new AtomicLong();
+
+    private final AtomicLong dbHitCount = new AtomicLong();
+
+    private final AtomicLong dbMissCount = new AtomicLong();
+
+    /**
+     * 重建布隆过滤器，启动时调用
+     */
+    public void rebuild() {
+        long expectedInsertions = Math.max(appConfig.getMd5IndexExpectedInsertions(), 1);
+        double fpp = appConfig.getMd5IndexFpp();
+        //最优位数 m = -n*ln(p)/(ln2)^2，最优哈希次数 k = m/n*ln2
+        long bitSize = Math.max((long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))), 64);
+        int hashCount = Math.max((int) Math.round((double) bitSize / expectedInsertions * Math.log(2)), 1);
+        int cacheSize = appConfig.getMd5IndexCacheSize();
+        md5Cache = Collections.synchronizedMap(new LinkedHashMap<String, FileInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileInfo> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        bloomReady = false;
+        //先切换到新的位数组，重建期间新增的md5也会写入
+        bloom = new Bloom(bitSize, hashCount);
+        long startTime = System.currentTimeMillis();
+        AtomicLong count = new AtomicLong();
+        fileInfoMapper.selectAllMd5(FileStatusEnums.USING.getStatus(), resultContext -> {
+            addBloom(resultContext.getResultObject());
+            count.incrementAndGet();
+        });
+        bloomReady = true;
+        logger.info("秒传md5索引重建完成,md5数量:{},位数:{},哈希次数:{},耗时:{}ms", count.get(), bitSize, hashCount, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 根据md5查找可用于秒传的文件
+     *
+     * @param fileMd5
+     * @return 不存在时返回null，返回的对象可以直接修改
+     */
+    public FileInfo getUsingFile(String fileMd5) {
+        if (StringTools.isEmpty(fileMd5)) {
+            return null;
+        }
+        if (bloomReady && !mightContain(fileMd5)) {
+            bloomSkipCount.incrementAndGet();
+            return null;
+        }
+        FileInfo cacheFile = md5Cache.get(fileMd5);
+        if (cacheFile != null) {
+            cacheHitCount.incrementAndGet();
+            return copyFile(cacheFile);
+        }
+        FileInfoQuery infoQuery = new FileInfoQuery();
+        infoQuery.setFileMd5(fileMd5);
+        infoQuery.setSimplePage(new SimplePage(0, 1));
+        infoQuery.setStatus(FileStatusEnums.USING.getStatus());
+        List<FileInfo> dbFileList = this.fileInfoMapper.selectList(infoQuery);
+        if (dbFileList.isEmpty()) {
+            dbMissCount.incrementAndGet();
+            return null;
+        }
+        dbHitCount.incrementAndGet();
+        FileInfo dbFile = dbFileList.get(0);
+        md5Cache.put(fileMd5, copyFile(dbFile));
+        return dbFile;
+    }
+
+    /**
+     * 新文件转码完成后加入索引
+     */
+    public void add(FileInfo fileInfo) {
+        if (StringTools.isEmpty(fileInfo.getFileMd5())) {
+            return;
+        }
+        addBloom(fileInfo.getFileMd5());
+        md5Cache.put(fileInfo.getFileMd5(), copyFile(fileInfo));
+    }
+
+    /**
+     * 文件删除后移出缓存，布隆过滤器不支持删除，由数据库查询兜底
+     */
+    public void remove(String fileMd5) {
+        if (StringTools.isEmpty(fileMd5)) {
+            return;
+        }
+        md5Cache.remove(fileMd5);
+    }
+
+    public Md5IndexStatsDto getStats() {
+        Md5IndexStatsDto statsDto = new Md5IndexStatsDto();
+        statsDto.setBloomReady(bloomReady);
+        Bloom current = bloom;
+        statsDto.setBloomBitSize(current.bitSize);
+        statsDto.setBloomHashCount(current.hashCount);
+        statsDto.setCacheSize(md5Cache.size());
+        statsDto.setBloomSkipCount(bloomSkipCount.get());
+        statsDto.setCacheHitCount(cacheHitCount.get());
+        statsDto.setDbHitCount(dbHitCount.get());
+        statsDto.setDbMissCount(dbMissCount.get());
+        return statsDto;
+    }
+
+    private boolean mightContain(String fileMd5) {
+        Bloom current = bloom;
+        long[] hashes = hash(fileMd5);
+        for (int i = 0; i < current.hashCount; i++) {
+            long index = Math.floorMod(hashes[0] + i * hashes[1], current.bitSize);
+            if ((current.bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addBloom(String fileMd5) {
+        if (StringTools.isEmpty(fileMd5)) {
+            return;
+        }
+        Bloom current = bloom;
+        AtomicLongArray bits = current.bits;
+        long[] hashes = hash(fileMd5);
+        for (int i = 0; i < current.hashCount; i++) {
+            long index = Math.floorMod(hashes[0] + i * hashes[1], current.bitSize);
+            int wordIndex = (int) (index >>> 6);
+            long mask = 1L << index;
+            long word;
+            do {
+                word = bits.get(wordIndex);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(wordIndex, word, word | mask));
+        }
+    }
+
+    /**
+     * 双重哈希，客户端上报的md5不一定规范，这里再做一次md5保证分布均匀
+     */
+    private static long[] hash(String fileMd5) {
+        ByteBuffer buffer = ByteBuffer.wrap(DigestUtils.md5(fileMd5));
+        return new long[]{buffer.getLong(), buffer.getLong() | 1};
+    }
+
+    /**
+     * 缓存只保留秒传需要的字段
+     */
+    private static FileInfo copyFile(FileInfo fileInfo) {
+        FileInfo copy = new FileInfo();
+        copy.setFileMd5(fileInfo.getFileMd5());
+        copy.setFileSize(fileInfo.getFileSize());
+        copy.setFileCover(fileInfo.getFileCover());
+        copy.setFilePath(fileInfo.getFilePath());
+        copy.setFolderType(fileInfo.getFolderType());
+        copy.setFileCategory(fileInfo.getFileCategory());
+        copy.setFileType(fileInfo.getFileType());
+        copy.setDuration(fileInfo.getDuration());
+        copy.setWidth(fileInfo.getWidth());
+        copy.setHeight(fileInfo.getHeight());
+        copy.setVideoCodec(fileInfo.getVideoCodec());
+        copy.setAudioCodec(fileInfo.getAudioCodec());
+        copy.setBitRate(fileInfo.getBitRate());
+        copy.setAudioChannels(fileInfo.getAudioChannels());
+        return copy;
+    }
+
+    /**
+     * 布隆过滤器的位数组和参数，创建后不再修改
+     */
+    private static final class Bloom {
+
+        private final AtomicLongArray bits;
+
+        private final long bitSize;
+
+        private final int hashCount;
+
+        private Bloom(long bitSize, int hashCount) {
+            this.bits = new AtomicLongArray((int) ((bitSize + 63) / 64));
+            this.bitSize = bitSize;
+            this.hashCount = hashCount;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.easypan.component;
+
+import com.easypan.entity.config.AppConfig;
+import com.easypan.entity.enums.FileStatusEnums;
+import com.easypan.entity.enums.FileTypeEnums;
+import com.easypan.entity.enums.TransferJobStatusEnums;
+import com.easypan.entity.po.FileInfo;
+import com.easypan.entity.po.FileTransferJob;
+import com.easypan.entity.query.FileInfoQuery;
+import com.easypan.entity.query.FileTransferJobQuery;
+import com.easypan.mappers.FileInfoMapper;
+import com.easypan.mappers.FileTransferJobMapper;
+import com.easypan.utils.StringTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 文件转码任务队列，任务保存在数据库中，服务重启不会丢失，多个节点可以从同一个队列领取任务
+ * 领取任务时设置执行超时时间，执行节点宕机后任务超时可以被其他节点重新领取
+ */
+@Component("fileTransferJobQueue")
+public class FileTransferJobQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileTransferJobQueue.class);
+
+    /**
+     * 视频转码耗时长，优先处理其他文件
+     */
+    private static final Integer PRIORITY_HIGH = 10;
+
+    private static final Integer PRIORITY_LOW = 0;
+
+    /**
+     * 当前节点标识
+     */
+    private static final String NODE_ID = ManagementFactory.getRuntimeMXBean().getName() + "-" + StringTools.getRandomString(5);
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private FileTransferJobMapper<FileTransferJob, FileTransferJobQuery> fileTransferJobMapper;
+
+    @Resource
+    private FileInfoMapper<FileInfo, FileInfoQuery> fileInfoMapper;
+
+    /**
+     * 新增转码任务，文件已有任务时不重复新增
+     */
+    public void enqueue(FileInfo fileInfo) {
+        Date curDate = new Date();
+        FileTransferJob job = new FileTransferJob();
+        job.setFileId(fileInfo.getFileId());
+        job.setUserId(fileInfo.getUserId());
+        job.setPriority(FileTypeEnums.VIDEO.getType().equals(fileInfo.getFileType()) ? PRIORITY_LOW : PRIORITY_HIGH);
+        job.setStatus(TransferJobStatusEnums.WAITING.getStatus());
+        job.setAttemptCount(0);
+        job.setNextRunTime(curDate);
+        job.setCreateTime(curDate);
+        job.setLastUpdateTime(curDate);
+        fileTransferJobMapper.insertIgnore(job);
+    }
+
+    /**
+     * 领取任务
+     *
+     * @param limit 最多领取数量
+     * @return 领取成功的任务
+     */
+    public List<FileTransferJob> claim(Integer limit) {
+        List<FileTransferJob> jobList = new ArrayList<>();
+        if (limit <= 0) {
+            return jobList;
+        }
+        Date curDate = new Date();
+        Date lockExpireTime = new Date(curDate.getTime() + appConfig.getTransferJobLockSeconds() * 1000);
+        //多取一些候选，其他节点抢先领取的任务会领取失败
+        List<Long> jobIds = fileTransferJobMapper.selectRunnableJobIds(curDate, limit * 2);
+        for (Long jobId : jobIds) {
+            if (jobList.size() >= limit) {
+                break;
+            }
+            if (fileTransferJobMapper.claimJob(jobId, NODE_ID, lockExpireTime, curDate) == 0) {
+                continue;
+            }
+            jobList.add(fileTransferJobMapper.selectByJobId(jobId));
+        }
+        return jobList;
+    }
+
+    /**
+     * 延长执行中任务的超时时间
+     */
+    public void renew(List<Long> jobIds) {
+        if (jobIds.isEmpty()) {
+            return;
+        }
+        Date lockExpireTime = new Date(System.currentTimeMillis() + appConfig.getTransferJobLockSeconds() * 1000);
+        fileTransferJobMapper.renewJobs(jobIds, NODE_ID, lockExpireTime);
+    }
+
+    /**
+     * 是否是最后一次执行，最后一次执行失败后不再重试
+     */
+    public Boolean isLastAttempt(FileTransferJob job) {
+        return job.getAttemptCount() >= appConfig.getTransferJobMaxAttempts();
+    }
+
+    /**
+     * 任务执行成功
+     */
+    public void finish(FileTransferJob job) {
+        FileTransferJob updateInfo = new FileTransferJob();
+        updateInfo.setStatus(TransferJobStatusEnums.FINISHED.getStatus());
+        updateInfo.setLastUpdateTime(new Date());
+        fileTransferJobMapper.updateByJobIdAndOwner(updateInfo, job.getJobId(), NODE_ID);
+    }
+
+    /**
+     * 任务执行失败，未超过最大执行次数时按指数退避安排重试
+     */
+    public void fail(FileTransferJob job) {
+        Date curDate = new Date();
+        FileTransferJob updateInfo = new FileTransferJob();
+        updateInfo.setLastUpdateTime(curDate);
+        if (isLastAttempt(job)) {
+            updateInfo.setStatus(TransferJobStatusEnums.FAIL.getStatus());
+            logger.error("转码任务:{}已执行{}次，不再重试", job.getJobId(), job.getAttemptCount());
+        } else {
+            long delaySeconds = appConfig.getTransferJobRetryDelaySeconds() << Math.min(job.getAttemptCount() - 1, 10);
+            updateInfo.setStatus(TransferJobStatusEnums.WAITING.getStatus());
+            updateInfo.setNextRunTime(new Date(curDate.getTime() + delaySeconds * 1000));
+            logger.warn("转码任务:{}第{}次执行失败，{}秒后重试", job.getJobId(), job.getAttemptCount(), delaySeconds);
+        }
+        fileTransferJobMapper.updateByJobIdAndOwner(updateInfo, job.getJobId(), NODE_ID);
+    }
+
+    /**
+     * 启动时为转码中但没有任务的文件补充任务，例如升级前上传的文件
+     */
+    public void sweep() {
+        FileInfoQuery fileInfoQuery = new FileInfoQuery();
+        fileInfoQuery.setStatus(FileStatusEnums.TRANSFER.getStatus());
+        List<FileInfo> fileInfoList = fileInfoMapper.selectList(fileInfoQuery);
+        for (FileInfo fileInfo : fileInfoList) {
+            enqueue(fileInfo);
+        }
+        logger.info("转码中文件{}个，已检查转码任务", fileInfoList.size());
+    }
+}
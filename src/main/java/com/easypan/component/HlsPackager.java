@@ -0,0 +1,154 @@
+package com.easypan.component;
+
+import com.easypan.entity.config.AppConfig;
+import com.easypan.entity.constants.Constants;
+import com.easypan.entity.dto.MediaInfoDto;
+import com.easypan.utils.MediaProbeUtils;
+import com.easypan.utils.ProcessUtils;
+import com.easypan.utils.StringTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 视频切片
+ */
+@Component("hlsPackager")
+public class HlsPackager {
+
+    private static final Logger logger = LoggerFactory.getLogger(HlsPackager.class);
+
+    @Resource
+    private AppConfig appConfig;
+
+    /**
+     * 视频切片，一次ffmpeg直接输出m3u8和切片，不再生成中间的index.ts
+     * 配置中允许直接复制的编码只重新封装不转码，其他编码在同一次执行中转为h264/aac，原文件保持不变
+     * 配置了多码率时，同一次执行中解码一次，按配置的分辨率分别编码，index.m3u8为主播放列表
+     *
+     * @param fileId        文件id，切片文件名以文件id开头
+     * @param videoFilePath 原视频
+     * @param tsFolder      切片目录
+     * @param event         边切片边播放，播放列表在每个切片完成后更新，切片写完后才出现
+     * @param mediaInfo     已获取的音视频信息，为空时重新获取
+     */
+    public void packageVideo(String fileId, String videoFilePath, File tsFolder, boolean event, MediaInfoDto mediaInfo) {
+        if (!tsFolder.exists()) {
+            tsFolder.mkdirs();
+        }
+        if (mediaInfo == null || mediaInfo.getVideoCodec() == null) {
+            mediaInfo = MediaProbeUtils.probe(videoFilePath);
+        }
+        String videoCodec = mediaInfo.getVideoCodec();
+        String audioCodec = mediaInfo.getAudioCodec();
+        Integer height = mediaInfo.getHeight();
+        boolean fmp4 = Constants.HLS_SEGMENT_TYPE_FMP4.equals(appConfig.getVideoHlsSegmentType());
+        String segmentSuffix = fmp4 ? ".m4s" : ".ts";
+
+        //只保留低于原视频分辨率的档位，原分辨率作为最高一档
+        List<Integer[]> ladder = new ArrayList<>();
+        if (height != null && !StringTools.isEmpty(appConfig.getVideoAbrLadder())) {
+            for (String rung : appConfig.getVideoAbrLadder().split(",")) {
+                String[] rungArray = rung.trim().split(":");
+                Integer rungHeight = Integer.parseInt(rungArray[0]);
+                if (rungHeight < height) {
+                    ladder.add(new Integer[]{rungHeight, Integer.parseInt(rungArray[1])});
+                }
+            }
+        }
+
+        List<String> cmd = new ArrayList<>(Arrays.asList("ffmpeg", "-y", "-i", videoFilePath));
+        if (ladder.isEmpty()) {
+            cmd.addAll(Arrays.asList("-map", "0:v:0", "-map", "0:a:0?"));
+            cmd.addAll(getSourceCodecArgs(videoCodec, audioCodec, fmp4, ""));
+            cmd.addAll(getHlsArgs(event));
+            if (fmp4) {
+                cmd.addAll(Arrays.asList("-hls_segment_type", "fmp4", "-hls_fmp4_init_filename", fileId + Constants.HLS_INIT_SUFFIX));
+            }
+            cmd.addAll(Arrays.asList("-hls_segment_filename", tsFolder.getPath() + "/" + fileId + "_%04d" + segmentSuffix,
+                    tsFolder.getPath() + "/" + Constants.M3U8_NAME));
+            ProcessUtils.executeCommand(cmd.toArray(new String[0]), false);
+            return;
+        }
+        //解码一次后按档位缩放
+        StringBuilder filter = new StringBuilder("[0:v:0]split=" + ladder.size());
+        for (int i = 0; i < ladder.size(); i++) {
+            filter.append("[s").append(i).append("]");
+        }
+        for (int i = 0; i < ladder.size(); i++) {
+            filter.append(";[s").append(i).append("]scale=-2:").append(ladder.get(i)[0]).append("[v").append(i).append("]");
+        }
+        cmd.addAll(Arrays.asList("-filter_complex", filter.toString()));
+        StringBuilder streamMap = new StringBuilder();
+        for (int i = 0; i <= ladder.size(); i++) {
+            boolean source = i == ladder.size();
+            cmd.addAll(Arrays.asList("-map", source ? "0:v:0" : "[v" + i + "]"));
+            if (audioCodec != null) {
+                cmd.addAll(Arrays.asList("-map", "0:a:0"));
+            }
+            if (source) {
+                cmd.addAll(getSourceCodecArgs(videoCodec, audioCodec, fmp4, ":" + i));
+            } else {
+                Integer bitrate = ladder.get(i)[1];
+                cmd.addAll(Arrays.asList("-c:v:" + i, "libx264", "-preset:v:" + i, "veryfast", "-b:v:" + i, bitrate + "k", "-maxrate:v:" + i,
+                        bitrate * 11 / 10 + "k", "-bufsize:v:" + i, bitrate * 2 + "k"));
+                if (audioCodec != null) {
+                    cmd.addAll(Arrays.asList("-c:a:" + i, "aac", "-b:a:" + i, "128k"));
+                }
+            }
+            String name = source ? "src" : String.valueOf(ladder.get(i)[0]);
+            streamMap.append(i == 0 ? "" : " ").append("v:").append(i).append(audioCodec != null ? ",a:" + i : "").append(",name:").append(name);
+        }
+        cmd.addAll(getHlsArgs(event));
+        cmd.addAll(Arrays.asList("-var_stream_map", streamMap.toString(), "-master_pl_name", Constants.M3U8_NAME));
+        if (fmp4) {
+            cmd.addAll(Arrays.asList("-hls_segment_type", "fmp4", "-hls_fmp4_init_filename", fileId + "_%v" + Constants.HLS_INIT_SUFFIX));
+        }
+        //各档位的播放列表和切片与主播放列表在同一目录，文件名以文件id开头，和切片使用同一个访问地址
+        cmd.addAll(Arrays.asList("-hls_segment_filename", tsFolder.getPath() + "/" + fileId + "_%v_%04d" + segmentSuffix,
+                tsFolder.getPath() + "/" + fileId + "_%v.m3u8"));
+        ProcessUtils.executeCommand(cmd.toArray(new String[0]), false);
+    }
+
+    private static List<String> getHlsArgs(boolean event) {
+        List<String> args = new ArrayList<>(Arrays.asList("-f", "hls", "-hls_time", "30", "-hls_list_size", "0"));
+        if (event) {
+            args.addAll(Arrays.asList("-hls_playlist_type", "event", "-hls_flags", "temp_file"));
+        }
+        return args;
+    }
+
+    /**
+     * 原分辨率的编码参数，允许直接复制的编码不转码
+     *
+     * @param streamIndex 多码率时的输出流序号，如 :2，单码率时为空
+     */
+    private List<String> getSourceCodecArgs(String videoCodec, String audioCodec, boolean fmp4, String streamIndex) {
+        List<String> copyVideoCodecs = Arrays.asList(appConfig.getVideoCopyVideoCodecs().split(","));
+        List<String> copyAudioCodecs = Arrays.asList(appConfig.getVideoCopyAudioCodecs().split(","));
+        List<String> args = new ArrayList<>();
+        if (copyVideoCodecs.contains(videoCodec)) {
+            args.addAll(Arrays.asList("-c:v" + streamIndex, "copy"));
+            if ("hevc".equals(videoCodec)) {
+                //苹果设备要求hevc使用hvc1标记
+                args.addAll(fmp4 ? Arrays.asList("-tag:v" + streamIndex, "hvc1") : Arrays.asList("-bsf:v" + streamIndex, "hevc_mp4toannexb"));
+            } else if ("h264".equals(videoCodec) && !fmp4) {
+                args.addAll(Arrays.asList("-bsf:v" + streamIndex, "h264_mp4toannexb"));
+            }
+        } else {
+            //转码
+            logger.info("视频编码:{}不在直接复制列表中，转码为h264", videoCodec);
+            args.addAll(Arrays.asList("-c:v" + streamIndex, "libx264", "-crf", "20"));
+        }
+        if (audioCodec != null) {
+            args.addAll(Arrays.asList("-c:a" + streamIndex, copyAudioCodecs.contains(audioCodec) ? "copy" : "aac"));
+        }
+        return args;
+    }
+}
@@ -0,0 +1,203 @@
+package com.easypan.component;
+
+import com.easypan.entity.config.AppConfig;
+import com.easypan.entity.constants.Constants;
+import com.easypan.entity.dto.MediaInfoDto;
+import com.easypan.entity.po.FileInfo;
+import com.easypan.utils.CopyTools;
+import com.easypan.utils.StringTools;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按需切片的切片缓存
+ * 视频第一次播放时在后台切片，播放列表出现后即可开始播放，之后的切片随生成随播放
+ * 缓存目录超过大小上限时删除最久未播放的视频切片，删除后再次播放会重新切片
+ * 切片目录可以在多个节点间共享，切片和删除都需要先获取redis锁
+ */
+@Component("hlsSegmentCache")
+public class HlsSegmentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(HlsSegmentCache.class);
+
+    private static final Integer QUEUE_SIZE_PER_WORKER = 16;
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private HlsPackager hlsPackager;
+
+    @Resource
+    private RedisComponent redisComponent;
+
+    /**
+     * 本节点持有锁时的标识
+     */
+    private final String lockOwner = StringTools.getRandomString(Constants.LENGTH_10);
+
+    /**
+     * 本节点切片中的视频，key为切片目录相对缓存目录的路径
+     */
+    private final Map<String, Future<?>> packagingMap = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executorService;
+
+    @PostConstruct
+    public void init() {
+        int workers = Math.max(1, appConfig.getVideoHlsLazyWorkers());
+        AtomicInteger threadIndex = new AtomicInteger();
+        executorService = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(workers * QUEUE_SIZE_PER_WORKER),
+                r -> new Thread(r, "hls-package-" + threadIndex.incrementAndGet()));
+    }
+
+    /**
+     * 获取视频的切片目录，按需切片模式下切片不完整且没有节点在切片时开始切片
+     * 不等待切片完成，播放列表还没有生成时目录中没有播放列表，由调用方让播放器稍后重试
+     */
+    public File getVideoFolder(FileInfo fileInfo) {
+        String fileNameNoSuffix = StringTools.getFileNameNoSuffix(fileInfo.getFilePath());
+        if (!appConfig.getVideoHlsLazy()) {
+            return new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + fileNameNoSuffix);
+        }
+        File tsFolder = new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_HLS_CACHE + fileNameNoSuffix);
+        String videoFilePath = appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + fileInfo.getFilePath();
+        //播放列表在切片过程中就会出现，以完成标记判断切片是否完整，转码中的视频还没有合并完成，不切片
+        if (!new File(tsFolder, Constants.HLS_COMPLETE_MARKER).exists() && new File(videoFilePath).exists()) {
+            startPackaging(fileInfo.getFileId(), videoFilePath, fileNameNoSuffix, tsFolder, CopyTools.copy(fileInfo, MediaInfoDto.class));
+        }
+        //记录最近播放时间，用于淘汰
+        tsFolder.setLastModified(System.currentTimeMillis());
+        return tsFolder;
+    }
+
+    /**
+     * 开始切片，本节点或其他节点已在切片、已切片完成或者切片任务已满时不处理
+     *
+     * @param folderName 切片目录相对缓存目录的路径
+     */
+    private synchronized void startPackaging(String fileId, String videoFilePath, String folderName, File tsFolder, MediaInfoDto mediaInfo) {
+        if (packagingMap.containsKey(folderName)) {
+            return;
+        }
+        if (!redisComponent.lockHlsPackaging(folderName, lockOwner)) {
+            return;
+        }
+        //加锁后再判断一次，其他节点可能刚刚切片完成
+        File marker = new File(tsFolder, Constants.HLS_COMPLETE_MARKER);
+        if (marker.exists()) {
+            redisComponent.unlockHlsPackaging(folderName, lockOwner);
+            return;
+        }
+        //没有节点在切片且没有完成标记，是服务重启等原因中断的切片，删除后重新切片
+        FileUtils.deleteQuietly(tsFolder);
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                hlsPackager.packageVideo(fileId, videoFilePath, tsFolder, true, mediaInfo);
+                marker.createNewFile();
+            } catch (Exception e) {
+                logger.error("视频:{}按需切片失败", videoFilePath, e);
+                //删除不完整的切片，下次播放重新切片
+                FileUtils.deleteQuietly(tsFolder);
+            } finally {
+                packagingMap.remove(folderName);
+                redisComponent.unlockHlsPackaging(folderName, lockOwner);
+            }
+        }, null);
+        packagingMap.put(folderName, task);
+        try {
+            executorService.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.warn("切片任务已满，视频:{}下次播放时再切片", videoFilePath);
+            packagingMap.remove(folderName);
+            redisComponent.unlockHlsPackaging(folderName, lockOwner);
+        }
+    }
+
+    /**
+     * 续期本节点切片中视频的锁，切片时间超过锁的有效期时其他节点不会误删
+     */
+    public void renewPackagingLocks() {
+        for (String folderName : packagingMap.keySet()) {
+            if (!redisComponent.renewHlsPackagingLock(folderName, lockOwner)) {
+                logger.warn("视频切片锁:{}续期失败", folderName);
+            }
+        }
+    }
+
+    /**
+     * 缓存超过大小上限时按最近播放时间淘汰，任何节点切片中的视频都不淘汰
+     */
+    public void evict() {
+        File cacheFolder = new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_HLS_CACHE);
+        File[] monthFolders = cacheFolder.listFiles(File::isDirectory);
+        if (monthFolders == null) {
+            return;
+        }
+        List<File> tsFolderList = new ArrayList<>();
+        for (File monthFolder : monthFolders) {
+            File[] tsFolders = monthFolder.listFiles(File::isDirectory);
+            if (tsFolders != null) {
+                for (File tsFolder : tsFolders) {
+                    tsFolderList.add(tsFolder);
+                }
+            }
+        }
+        Map<File, Long> sizeMap = new HashMap<>();
+        long totalSize = 0;
+        for (File tsFolder : tsFolderList) {
+            long size = FileUtils.sizeOfDirectory(tsFolder);
+            sizeMap.put(tsFolder, size);
+            totalSize += size;
+        }
+        if (totalSize <= appConfig.getVideoHlsCacheMaxSize()) {
+            return;
+        }
+        tsFolderList.sort(Comparator.comparingLong(File::lastModified));
+        for (File tsFolder : tsFolderList) {
+            if (totalSize <= appConfig.getVideoHlsCacheMaxSize()) {
+                break;
+            }
+            //和切片使用同一个锁，删除期间任何节点都不会开始切片
+            String folderName = tsFolder.getParentFile().getName() + "/" + tsFolder.getName();
+            if (!redisComponent.lockHlsPackaging(folderName, lockOwner)) {
+                continue;
+            }
+            try {
+                FileUtils.deleteDirectory(tsFolder);
+                totalSize -= sizeMap.get(tsFolder);
+                logger.info("切片缓存超出上限，删除视频切片:{}", tsFolder.getPath());
+            } catch (IOException e) {
+                logger.error("删除视频切片:{}失败", tsFolder.getPath(), e);
+            } finally {
+                redisComponent.unlockHlsPackaging(folderName, lockOwner);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+}
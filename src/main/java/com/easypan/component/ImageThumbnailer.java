@@ -0,0 +1,138 @@
+package com.easypan.component;
+
+import com.easypan.entity.config.AppConfig;
+import com.easypan.entity.constants.Constants;
+import com.easypan.utils.ScaleFilter;
+import com.easypan.utils.StringTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 图片缩略图，在进程内生成，只有ImageIO无法解码的格式才启动ffmpeg
+ * 从文件头读取宽高，解码时按目标宽度隔行隔列采样，大图也只解码需要的像素
+ * 同时解码的图片数量固定，超出时等待，限制同时占用的内存
+ */
+@Component("imageThumbnailer")
+public class ImageThumbnailer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageThumbnailer.class);
+
+    @Resource
+    private AppConfig appConfig;
+
+    private Semaphore decodePermits;
+
+    @PostConstruct
+    public void init() {
+        decodePermits = new Semaphore(Math.max(1, appConfig.getImageThumbnailWorkers()), true);
+    }
+
+    /**
+     * 生成缩略图
+     *
+     * @return 原图宽度不超过缩略图宽度时不生成，返回false
+     */
+    public Boolean createThumbnail(File sourceFile, int thumbnailWidth, File targetFile) {
+        try {
+            decodePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            return doCreateThumbnail(sourceFile, thumbnailWidth, targetFile);
+        } catch (Exception e) {
+            logger.error("生成缩略图失败:{}", sourceFile.getPath(), e);
+            return false;
+        } finally {
+            decodePermits.release();
+        }
+    }
+
+    /**
+     * 获取图片的预览图，预览图不存在时生成，原图不超过屏幕宽度时直接使用原图
+     * 预览图和原图在同一目录，文件名加上_preview
+     */
+    public File getPreviewFile(File sourceFile) {
+        String fileName = sourceFile.getName();
+        String previewName = StringTools.getFileNameNoSuffix(fileName) + Constants.IMAGE_PREVIEW_SUFFIX + StringTools.getFileSuffix(fileName);
+        File previewFile = new File(sourceFile.getParentFile(), previewName);
+        if (previewFile.exists()) {
+            return previewFile;
+        }
+        //先写入临时文件再改名，同时访问时不会读到写了一半的预览图
+        File tempFile = new File(sourceFile.getParentFile(), "." + StringTools.getRandomString(Constants.LENGTH_10) + "_" + previewName);
+        try {
+            if (!createThumbnail(sourceFile, Constants.LENGTH_1920, tempFile) || !tempFile.renameTo(previewFile)) {
+                return sourceFile;
+            }
+            return previewFile;
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private Boolean doCreateThumbnail(File sourceFile, int thumbnailWidth, File targetFile) throws Exception {
+        try (ImageInputStream input = ImageIO.createImageInputStream(sourceFile)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                //ImageIO不支持的格式交给ffmpeg
+                return ScaleFilter.createThumbnailWidthFFmpeg(sourceFile, thumbnailWidth, targetFile, false);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                //只读文件头，不解码像素
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                if (sourceWidth <= thumbnailWidth) {
+                    return false;
+                }
+                //采样后的宽度不小于缩略图宽度，再缩放到准确的宽度
+                int subsampling = Math.max(1, sourceWidth / thumbnailWidth);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage sampled = reader.read(0, param);
+                int thumbnailHeight = Math.max(1, (int) Math.round((double) sourceHeight * thumbnailWidth / sourceWidth));
+                String formatName = StringTools.getFileSuffix(targetFile.getName()).replace(".", "").toLowerCase();
+                BufferedImage thumbnail = scale(sampled, thumbnailWidth, thumbnailHeight, "png".equals(formatName) || "gif".equals(formatName));
+                if (!ImageIO.write(thumbnail, formatName, targetFile)) {
+                    return ScaleFilter.createThumbnailWidthFFmpeg(sourceFile, thumbnailWidth, targetFile, false);
+                }
+                return true;
+            } finally {
+                reader.dispose();
+            }
+        } catch (Exception e) {
+            logger.error("解码图片失败，使用ffmpeg生成缩略图:{}", sourceFile.getPath(), e);
+            return ScaleFilter.createThumbnailWidthFFmpeg(sourceFile, thumbnailWidth, targetFile, false);
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source, int width, int height, boolean keepAlpha) {
+        BufferedImage target = new BufferedImage(width, height, keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+}
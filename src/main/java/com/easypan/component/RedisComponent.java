@@ -2,6 +2,7 @@ package com.easypan.component;
 
 import com.easypan.entity.constants.Constants;
 import com.easypan.entity.dto.DownloadFileDto;
+import com.easypan.entity.dto.FileDigestDto;
 import com.easypan.entity.dto.SysSettingsDto;
 import com.easypan.entity.dto.UserSpaceDto;
 import com.easypan.entity.po.FileInfo;
@@ -10,15 +11,136 @@ import com.easypan.entity.query.FileInfoQuery;
 import com.easypan.entity.query.UserInfoQuery;
 import com.easypan.mappers.FileInfoMapper;
 import com.easypan.mappers.UserInfoMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 @Component("redisComponent")
 public class RedisComponent {
 
+    private static final Logger logger = LoggerFactory.getLogger(RedisComponent.class);
+
+    /**
+     * 预占空间：已用 + 所有上传中文件的预占 + 本次大小 不超过总空间时记入预占，并记录预占时间，返回1成功 0空间不足 -1已用空间未初始化
+     */
+    private static final RedisScript<Long> SCRIPT_RESERVE_SPACE = new DefaultRedisScript<>(
+            "local used = redis.call('GET', KEYS[1]) " +
+                    "if not used then return -1 end " +
+                    "local reserved = 0 " +
+                    "local values = redis.call('HVALS', KEYS[2]) " +
+                    "for i = 1, #values do reserved = reserved + tonumber(values[i]) end " +
+                    "if tonumber(used) + reserved + tonumber(ARGV[2]) > tonumber(ARGV[3]) then return 0 end " +
+                    "redis.call('HINCRBY', KEYS[2], ARGV[1], ARGV[2]) " +
+                    "redis.call('EXPIRE', KEYS[2], ARGV[4]) " +
+                    "redis.call('HSET', KEYS[3], ARGV[1], ARGV[5]) " +
+                    "redis.call('EXPIRE', KEYS[3], ARGV[4]) " +
+                    "return 1", Long.class);
+
+    /**
+     * 提交空间：移除文件的预占并计入已用，同时结束进行中的空间变更
+     */
+    private static final RedisScript<Long> SCRIPT_COMMIT_SPACE = new DefaultRedisScript<>(
+            "redis.call('HDEL', KEYS[2], ARGV[1]) " +
+                    "redis.call('HDEL', KEYS[3], ARGV[1]) " +
+                    "if redis.call('EXISTS', KEYS[1]) == 1 then redis.call('INCRBY', KEYS[1], ARGV[2]) end " +
+                    "if tonumber(redis.call('GET', KEYS[4]) or '0') > 0 then redis.call('DECR', KEYS[4]) end " +
+                    "return 1", Long.class);
+
+    /**
+     * 开始空间变更：在数据库事务提交前计数，对账在计数不为0时跳过，避免提交后才计入的变更被重复计算
+     */
+    private static final RedisScript<Long> SCRIPT_BEGIN_SPACE_CHANGE = new DefaultRedisScript<>(
+            "local count = redis.call('INCR', KEYS[1]) " +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+                    "return count", Long.class);
+
+    /**
+     * 结束空间变更：已用空间增加ARGV[1]，事务回滚时为0
+     */
+    private static final RedisScript<Long> SCRIPT_END_SPACE_CHANGE = new DefaultRedisScript<>(
+            "if tonumber(ARGV[1]) ~= 0 and redis.call('EXISTS', KEYS[1]) == 1 then redis.call('INCRBY', KEYS[1], ARGV[1]) end " +
+                    "if tonumber(redis.call('GET', KEYS[2]) or '0') > 0 then redis.call('DECR', KEYS[2]) end " +
+                    "return 1", Long.class);
+
+    /**
+     * 释放预占：预占减少到0时移除
+     */
+    private static final RedisScript<Long> SCRIPT_RELEASE_SPACE = new DefaultRedisScript<>(
+            "local left = redis.call('HINCRBY', KEYS[1], ARGV[1], -tonumber(ARGV[2])) " +
+                    "if left <= 0 then redis.call('HDEL', KEYS[1], ARGV[1]) redis.call('HDEL', KEYS[2], ARGV[1]) end " +
+                    "return left", Long.class);
+
+    /**
+     * 对账：已用空间在读取数据库期间没有变化且没有进行中的空间变更时才覆盖，否则留到下一轮，不需要加锁
+     */
+    private static final RedisScript<Long> SCRIPT_RECONCILE_SPACE = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+                    "if tonumber(redis.call('GET', KEYS[2]) or '0') > 0 then return 0 end " +
+                    "local ttl = redis.call('PTTL', KEYS[1]) " +
+                    "if ttl > 0 then redis.call('SET', KEYS[1], ARGV[2], 'PX', ttl) else redis.call('SET', KEYS[1], ARGV[2]) end " +
+                    "return 1", Long.class);
+
+    /**
+     * 令牌桶：按时间补充令牌后扣除本次字节数，令牌可以为负，字节数为负时退回令牌，返回需要等待的毫秒数，0不需要等待
+     * 时间取redis服务器时间，多个节点共用同一个桶，不受各节点时钟偏差影响；读取时间后有写入，需要按命令复制
+     */
+    private static final RedisScript<Long> SCRIPT_ACQUIRE_BANDWIDTH = new DefaultRedisScript<>(
+            "redis.replicate_commands() " +
+                    "local rate = tonumber(ARGV[1]) " +
+                    "local burst = tonumber(ARGV[2]) " +
+                    "local time = redis.call('TIME') " +
+                    "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+                    "local data = redis.call('HMGET', KEYS[1], 'tokens', 'ts') " +
+                    "local tokens = tonumber(data[1]) " +
+                    "local ts = tonumber(data[2]) " +
+                    "if not tokens then tokens = burst ts = now end " +
+                    "if now > ts then tokens = math.min(burst, tokens + (now - ts) * rate / 1000) ts = now end " +
+                    "tokens = math.min(burst, tokens - tonumber(ARGV[3])) " +
+                    "redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts)) " +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[4]) " +
+                    "if tokens >= 0 then return 0 end " +
+                    "return math.ceil(-tokens * 1000 / rate)", Long.class);
+
+    /**
+     * 标记分片已上传，返回 [该分片之前是否已上传, 已上传分片数]，setbit和bitcount在一个脚本内完成保证原子性
+     */
+    private static final RedisScript<List> SCRIPT_MARK_CHUNK = new DefaultRedisScript<>(
+            "local old = redis.call('SETBIT', KEYS[1], ARGV[1], 1) " +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+                    "return {old, redis.call('BITCOUNT', KEYS[1])}", List.class);
+
+    /**
+     * 取消分片标记，分片位图不存在时不创建
+     */
+    private static final RedisScript<Long> SCRIPT_UNMARK_CHUNK = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+                    "return redis.call('SETBIT', KEYS[1], ARGV[1], 0)", Long.class);
+
+    /**
+     * 续期锁，只有持有者可以续期
+     */
+    private static final RedisScript<Long> SCRIPT_RENEW_LOCK = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+                    "return redis.call('EXPIRE', KEYS[1], ARGV[2])", Long.class);
+
+    /**
+     * 释放锁，只有持有者可以释放，锁过期后被其他节点获取时不会误删
+     */
+    private static final RedisScript<Long> SCRIPT_UNLOCK = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+                    "return redis.call('DEL', KEYS[1])", Long.class);
+
     @Resource
     private RedisUtils redisUtils;
 
@@ -75,16 +197,145 @@ public class RedisComponent {
             spaceDto.setTotalSpace(getSysSettingsDto().getUserInitUseSpace() * Constants.MB);
             redisUtils.setex(Constants.REDIS_KEY_USER_SPACE_USE + userId, spaceDto, Constants.REDIS_KEY_EXPIRES_DAY);
         }
+        //已用空间以原子计数为准
+        spaceDto.setUseSpace(getUserSpaceUsed(userId));
         return spaceDto;
     }
 
     /**
-     * 保存已使用的空间
+     * 保存用户空间，已用空间计数只在不存在时初始化，已存在时不覆盖，并发的上传和删除按变化量原子修改，偏差由对账修正
      *
      * @param userId
      */
     public void saveUserSpaceUse(String userId, UserSpaceDto userSpaceDto) {
         redisUtils.setex(Constants.REDIS_KEY_USER_SPACE_USE + userId, userSpaceDto, Constants.REDIS_KEY_EXPIRES_DAY);
+        redisUtils.setStringIfAbsent(Constants.REDIS_KEY_USER_SPACE_USED + userId, String.valueOf(userSpaceDto.getUseSpace()),
+                Constants.REDIS_KEY_EXPIRES_DAY);
+    }
+
+    /**
+     * 获取已用空间计数，不存在时从数据库初始化
+     */
+    private Long getUserSpaceUsed(String userId) {
+        String key = Constants.REDIS_KEY_USER_SPACE_USED + userId;
+        String used = redisUtils.getString(key);
+        if (used == null) {
+            redisUtils.setStringIfAbsent(key, String.valueOf(this.fileInfoMapper.selectUseSpace(userId)), Constants.REDIS_KEY_EXPIRES_DAY);
+            used = redisUtils.getString(key);
+        }
+        return used == null ? 0L : Long.parseLong(used);
+    }
+
+    /**
+     * 为上传中的文件预占空间
+     *
+     * @param userId
+     * @param fileId
+     * @param size       本次预占大小
+     * @param totalSpace 总空间
+     * @return 空间不足时返回false
+     */
+    public boolean reserveUserSpace(String userId, String fileId, Long size, Long totalSpace) {
+        List<String> keys = Arrays.asList(Constants.REDIS_KEY_USER_SPACE_USED + userId, Constants.REDIS_KEY_USER_SPACE_RESERVE + userId,
+                Constants.REDIS_KEY_USER_SPACE_RESERVE_TIME + userId);
+        String[] args = {fileId, String.valueOf(size), String.valueOf(totalSpace), String.valueOf(Constants.REDIS_KEY_EXPIRES_DAY),
+                String.valueOf(System.currentTimeMillis())};
+        Long result = (Long) redisUtils.executeScript(SCRIPT_RESERVE_SPACE, keys, args);
+        if (result == -1) {
+            getUserSpaceUsed(userId);
+            result = (Long) redisUtils.executeScript(SCRIPT_RESERVE_SPACE, keys, args);
+        }
+        return result == 1;
+    }
+
+    /**
+     * 释放文件的部分预占，用于重传的分片
+     */
+    public void releaseUserSpace(String userId, String fileId, Long size) {
+        redisUtils.executeScript(SCRIPT_RELEASE_SPACE, Arrays.asList(Constants.REDIS_KEY_USER_SPACE_RESERVE + userId,
+                Constants.REDIS_KEY_USER_SPACE_RESERVE_TIME + userId), fileId, String.valueOf(size));
+    }
+
+    /**
+     * 上传完成，将文件的预占转为已用
+     *
+     * @param userId
+     * @param fileId
+     * @param size   实际占用大小
+     */
+    public void commitUserSpace(String userId, String fileId, Long size) {
+        List<String> keys = Arrays.asList(Constants.REDIS_KEY_USER_SPACE_USED + userId, Constants.REDIS_KEY_USER_SPACE_RESERVE + userId,
+                Constants.REDIS_KEY_USER_SPACE_RESERVE_TIME + userId, Constants.REDIS_KEY_USER_SPACE_PENDING + userId);
+        redisUtils.executeScript(SCRIPT_COMMIT_SPACE, keys, fileId, String.valueOf(size));
+    }
+
+    /**
+     * 开始空间变更，在修改已用空间的数据库事务提交前调用，之后必须调用commitUserSpace或endUserSpaceChange
+     */
+    public void beginUserSpaceChange(String userId) {
+        redisUtils.executeScript(SCRIPT_BEGIN_SPACE_CHANGE, Collections.singletonList(Constants.REDIS_KEY_USER_SPACE_PENDING + userId),
+                String.valueOf(Constants.REDIS_KEY_EXPIRES_FIVE_MIN));
+    }
+
+    /**
+     * 结束空间变更，事务提交后已用空间增加变更量，回滚时变更量为0
+     *
+     * @param userId
+     * @param delta  已用空间变化量，减少时为负数
+     */
+    public void endUserSpaceChange(String userId, Long delta) {
+        redisUtils.executeScript(SCRIPT_END_SPACE_CHANGE, Arrays.asList(Constants.REDIS_KEY_USER_SPACE_USED + userId,
+                Constants.REDIS_KEY_USER_SPACE_PENDING + userId), String.valueOf(delta));
+    }
+
+    /**
+     * 对账，用数据库中的实际大小修正已用空间计数，同时清理上传已过期的预占
+     *
+     * @param userId
+     */
+    public void reconcileUserSpace(String userId) {
+        String usedKey = Constants.REDIS_KEY_USER_SPACE_USED + userId;
+        String reserveKey = Constants.REDIS_KEY_USER_SPACE_RESERVE + userId;
+        String reserveTimeKey = Constants.REDIS_KEY_USER_SPACE_RESERVE_TIME + userId;
+        Map<String, String> reserveMap = redisUtils.getHashAll(reserveKey);
+        Map<String, String> reserveTimeMap = redisUtils.getHashAll(reserveTimeKey);
+        long expireTime = System.currentTimeMillis() - Constants.REDIS_KEY_EXPIRES_ONE_HOUR * 1000L;
+        for (String fileId : reserveMap.keySet()) {
+            //第一个分片写入完成前还没有分片位图，只清理超过上传有效期没有再预占的文件
+            String reserveTime = reserveTimeMap.get(fileId);
+            if (reserveTime != null && Long.parseLong(reserveTime) > expireTime) {
+                continue;
+            }
+            if (!redisUtils.hasKey(Constants.REDIS_KEY_USER_FILE_CHUNKS + userId + fileId)) {
+                redisUtils.deleteHash(reserveKey, fileId);
+                redisUtils.deleteHash(reserveTimeKey, fileId);
+            }
+        }
+        String before = redisUtils.getString(usedKey);
+        if (before == null) {
+            return;
+        }
+        Long dbUsed = this.fileInfoMapper.selectUseSpace(userId);
+        if (before.equals(String.valueOf(dbUsed))) {
+            return;
+        }
+        Long result = (Long) redisUtils.executeScript(SCRIPT_RECONCILE_SPACE, Arrays.asList(usedKey, Constants.REDIS_KEY_USER_SPACE_PENDING + userId),
+                before, String.valueOf(dbUsed));
+        if (result == 1) {
+            logger.info("用户:{}已用空间对账修正,缓存:{},数据库:{}", userId, before, dbUsed);
+        }
+    }
+
+    /**
+     * 获取有已用空间计数的用户
+     */
+    public Set<String> getUserSpaceUsedUserIds() {
+        Set<String> keys = redisUtils.scanKeys(Constants.REDIS_KEY_USER_SPACE_USED);
+        Set<String> userIds = new HashSet<>();
+        for (String key : keys) {
+            userIds.add(key.substring(Constants.REDIS_KEY_USER_SPACE_USED.length()));
+        }
+        return userIds;
     }
 
     public UserSpaceDto resetUserSpaceUse(String userId) {
@@ -94,33 +345,158 @@ public class RedisComponent {
 
         UserInfo userInfo = this.userInfoMapper.selectByUserId(userId);
         spaceDto.setTotalSpace(userInfo.getTotalSpace());
-        redisUtils.setex(Constants.REDIS_KEY_USER_SPACE_USE + userId, spaceDto, Constants.REDIS_KEY_EXPIRES_DAY);
+        saveUserSpaceUse(userId, spaceDto);
         return spaceDto;
     }
 
-    //保存文件临时大小
-    public void saveFileTempSize(String userId, String fileId, Long fileSize) {
-        Long currentSize = getFileTempSize(userId, fileId);
-        redisUtils.setex(Constants.REDIS_KEY_USER_FILE_TEMP_SIZE + userId + fileId, currentSize + fileSize, Constants.REDIS_KEY_EXPIRES_ONE_HOUR);
+    /**
+     * 获取上传文件所在的月份目录，原地写入模式下第一个到达的分片决定月份，后续分片沿用
+     * 每个分片都刷新过期时间，和分片位图一样在最后一个分片一小时后过期，上传时间较长时月份不会中途改变
+     *
+     * @param userId
+     * @param fileId
+     * @param month  当前月份
+     * @return
+     */
+    public String getFileUploadMonth(String userId, String fileId, String month) {
+        String key = Constants.REDIS_KEY_USER_FILE_UPLOAD_MONTH + userId + fileId;
+        if (redisUtils.setnx(key, month, Constants.REDIS_KEY_EXPIRES_ONE_HOUR)) {
+            return month;
+        }
+        Object dbMonth = redisUtils.get(key);
+        if (dbMonth == null) {
+            return month;
+        }
+        redisUtils.expire(key, Constants.REDIS_KEY_EXPIRES_ONE_HOUR);
+        return (String) dbMonth;
     }
 
-    public Long getFileTempSize(String userId, String fileId) {
-        Long currentSize = getFileSizeFromRedis(Constants.REDIS_KEY_USER_FILE_TEMP_SIZE + userId + fileId);
-        return currentSize;
+    /**
+     * 获取已记录的上传月份，没有记录时返回null
+     */
+    public String getSavedFileUploadMonth(String userId, String fileId) {
+        return (String) redisUtils.get(Constants.REDIS_KEY_USER_FILE_UPLOAD_MONTH + userId + fileId);
     }
 
-    private Long getFileSizeFromRedis(String key) {
-        Object sizeObj = redisUtils.get(key);
-        if (sizeObj == null) {
-            return 0L;
+    /**
+     * 在分片位图中标记分片已上传
+     *
+     * @param userId
+     * @param fileId
+     * @param chunkIndex
+     * @return [该分片之前是否已上传(0/1), 已上传分片数]
+     */
+    public List<Long> markFileChunk(String userId, String fileId, Integer chunkIndex) {
+        return (List<Long>) redisUtils.executeScript(SCRIPT_MARK_CHUNK, Collections.singletonList(Constants.REDIS_KEY_USER_FILE_CHUNKS + userId + fileId),
+                String.valueOf(chunkIndex), String.valueOf(Constants.REDIS_KEY_EXPIRES_ONE_HOUR));
+    }
+
+    /**
+     * 取消分片标记，用于写入后记录上传失败的分片，重传时重新计数
+     *
+     * @param userId
+     * @param fileId
+     * @param chunkIndex
+     */
+    public void unmarkFileChunk(String userId, String fileId, Integer chunkIndex) {
+        redisUtils.executeScript(SCRIPT_UNMARK_CHUNK, Collections.singletonList(Constants.REDIS_KEY_USER_FILE_CHUNKS + userId + fileId),
+                String.valueOf(chunkIndex));
+    }
+
+    /**
+     * 获取已上传的分片序号
+     *
+     * @param userId
+     * @param fileId
+     * @return 分片位图不存在时返回null
+     */
+    public List<Integer> getFileChunks(String userId, String fileId) {
+        byte[] bitmap = redisUtils.getBytes(Constants.REDIS_KEY_USER_FILE_CHUNKS + userId + fileId);
+        if (bitmap == null) {
+            return null;
         }
-        if (sizeObj instanceof Integer) {
-            return ((Integer) sizeObj).longValue();
-        } else if (sizeObj instanceof Long) {
-            return (Long) sizeObj;
+        List<Integer> chunkList = new ArrayList<>();
+        for (int i = 0; i < bitmap.length; i++) {
+            //redis位图每个字节的高位在前
+            for (int bit = 0; bit < 8; bit++) {
+                if ((bitmap[i] & (0x80 >> bit)) != 0) {
+                    chunkList.add(i * 8 + bit);
+                }
+            }
         }
+        return chunkList;
+    }
 
-        return 0L;
+    /**
+     * 清除上传进度，分片位图、临时大小、md5计算进度和上传月份
+     *
+     * @param userId
+     * @param fileId
+     */
+    public void cleanFileUpload(String userId, String fileId) {
+        redisUtils.delete(Constants.REDIS_KEY_USER_FILE_CHUNKS + userId + fileId, Constants.REDIS_KEY_USER_FILE_DIGEST + userId + fileId,
+                Constants.REDIS_KEY_USER_FILE_UPLOAD_MONTH + userId + fileId);
+        redisUtils.deleteHash(Constants.REDIS_KEY_USER_SPACE_RESERVE + userId, fileId);
+        redisUtils.deleteHash(Constants.REDIS_KEY_USER_SPACE_RESERVE_TIME + userId, fileId);
+    }
+
+    /**
+     * 获取md5计算进度
+     *
+     * @param userId
+     * @param fileId
+     * @return 不存在时返回从第一个分片开始的进度
+     */
+    public FileDigestDto getFileDigest(String userId, String fileId) {
+        FileDigestDto digestDto = (FileDigestDto) redisUtils.get(Constants.REDIS_KEY_USER_FILE_DIGEST + userId + fileId);
+        return digestDto == null ? new FileDigestDto() : digestDto;
+    }
+
+    public void saveFileDigest(String userId, String fileId, FileDigestDto digestDto) {
+        redisUtils.setex(Constants.REDIS_KEY_USER_FILE_DIGEST + userId + fileId, digestDto, Constants.REDIS_KEY_EXPIRES_ONE_HOUR);
+    }
+
+    public void removeFileDigest(String userId, String fileId) {
+        redisUtils.delete(Constants.REDIS_KEY_USER_FILE_DIGEST + userId + fileId);
+    }
+
+    /**
+     * md5计算进度加锁，同一时间只有一个分片请求推进计算
+     */
+    public boolean lockFileDigest(String userId, String fileId) {
+        return redisUtils.setnx(Constants.REDIS_KEY_USER_FILE_DIGEST_LOCK + userId + fileId, fileId, Constants.REDIS_KEY_EXPIRES_ONE_MIN);
+    }
+
+    public void unlockFileDigest(String userId, String fileId) {
+        redisUtils.delete(Constants.REDIS_KEY_USER_FILE_DIGEST_LOCK + userId + fileId);
+    }
+
+    /**
+     * 按需切片加锁，共享存储上多个节点同一时间只有一个节点切片或删除同一个视频的切片目录，切片期间定时续期
+     *
+     * @param folderName 切片目录相对缓存目录的路径
+     * @param owner      持有者，每个节点不同
+     */
+    public boolean lockHlsPackaging(String folderName, String owner) {
+        return redisUtils.setStringIfAbsent(Constants.REDIS_KEY_HLS_PACKAGING_LOCK + folderName, owner, Constants.REDIS_KEY_EXPIRES_FIVE_MIN);
+    }
+
+    public boolean renewHlsPackagingLock(String folderName, String owner) {
+        Long result = (Long) redisUtils.executeScript(SCRIPT_RENEW_LOCK, Collections.singletonList(Constants.REDIS_KEY_HLS_PACKAGING_LOCK + folderName),
+                owner, String.valueOf(Constants.REDIS_KEY_EXPIRES_FIVE_MIN));
+        return result == 1;
+    }
+
+    public void unlockHlsPackaging(String folderName, String owner) {
+        redisUtils.executeScript(SCRIPT_UNLOCK, Collections.singletonList(Constants.REDIS_KEY_HLS_PACKAGING_LOCK + folderName), owner);
+    }
+
+    /**
+     * 获取文件临时大小，即上传中文件已预占的空间
+     */
+    public Long getFileTempSize(String userId, String fileId) {
+        String size = redisUtils.getHashString(Constants.REDIS_KEY_USER_SPACE_RESERVE + userId, fileId);
+        return size == null ? 0L : Long.parseLong(size);
     }
 
     public Map<String, String> getHashAll(String key) {
@@ -142,4 +518,19 @@ public class RedisComponent {
     public void removeZSet(String key, String member) {
         redisUtils.removeZSet(key, member);
     }
+
+    /**
+     * 从令牌桶中取出字节数，多个节点共用同一个桶
+     *
+     * @param rate  每秒字节数
+     * @param burst 桶容量
+     * @return 需要等待的毫秒数
+     */
+    public Long acquireBandwidth(String key, long rate, long burst, long bytes) {
+        List<String> keys = Collections.singletonList(Constants.REDIS_KEY_BANDWIDTH + key);
+        //桶满所需时间之后没有访问的桶直接过期，下次访问时是满的
+        long expireMillis = burst * 1000 / rate + Constants.REDIS_KEY_EXPIRES_ONE_MIN * 1000;
+        String[] args = {String.valueOf(rate), String.valueOf(burst), String.valueOf(bytes), String.valueOf(expireMillis)};
+        return (Long) redisUtils.executeScript(SCRIPT_ACQUIRE_BANDWIDTH, keys, args);
+    }
 }
@@ -2,13 +2,20 @@ package com.easypan.component;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -82,6 +89,91 @@ public class RedisUtils<V> {
         }
     }
 
+    /**
+     * 不存在时放入并设置时间
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒)
+     * @return true放入成功 false键已存在
+     */
+    public boolean setnx(String key, V value, long time) {
+        Boolean result = redisTemplate.opsForValue().setIfAbsent(key, value, time, TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(result);
+    }
+
+    /**
+     * 设置过期时间
+     *
+     * @param key  键
+     * @param time 时间(秒)
+     */
+    public void expire(String key, long time) {
+        redisTemplate.expire(key, time, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 按字符串读取，用于incrby等原子计数
+     */
+    public String getString(String key) {
+        return stringRedisTemplate.opsForValue().get(key);
+    }
+
+    public void setString(String key, String value, long time) {
+        stringRedisTemplate.opsForValue().set(key, value, time, TimeUnit.SECONDS);
+    }
+
+    public boolean setStringIfAbsent(String key, String value, long time) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(key, value, time, TimeUnit.SECONDS));
+    }
+
+    public String getHashString(String key, String field) {
+        return stringRedisTemplate.<String, String>opsForHash().get(key, field);
+    }
+
+    public void setHashString(String key, String field, String value, long time) {
+        stringRedisTemplate.opsForHash().put(key, field, value);
+        stringRedisTemplate.expire(key, time, TimeUnit.SECONDS);
+    }
+
+    public void deleteHash(String key, String field) {
+        stringRedisTemplate.opsForHash().delete(key, field);
+    }
+
+    public boolean hasKey(String key) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(key));
+    }
+
+    /**
+     * 按前缀扫描键，使用scan不阻塞redis
+     */
+    public Set<String> scanKeys(String prefix) {
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(1000).build();
+        return stringRedisTemplate.execute((RedisCallback<Set<String>>) connection -> {
+            Set<String> keys = new HashSet<>();
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext()) {
+                    keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                }
+            }
+            return keys;
+        });
+    }
+
+    /**
+     * 获取原始字节，用于读取位图
+     */
+    public byte[] getBytes(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 执行lua脚本，参数按字符串传递
+     */
+    public <T> T executeScript(RedisScript<T> script, List<String> keys, String... args) {
+        return stringRedisTemplate.execute(script, keys, (Object[]) args);
+    }
+
     /**
      * 获取哈希表所有键值（热点统计专用）
      */
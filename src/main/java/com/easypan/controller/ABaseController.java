@@ -1,22 +1,24 @@
 package com.easypan.controller;
 
 import com.easypan.entity.constants.Constants;
+import com.easypan.entity.dto.BandwidthLimitDto;
 import com.easypan.entity.dto.SessionShareDto;
 import com.easypan.entity.dto.SessionWebUserDto;
 import com.easypan.entity.enums.ResponseCodeEnum;
 import com.easypan.entity.vo.PaginationResultVO;
 import com.easypan.entity.vo.ResponseVO;
 import com.easypan.utils.CopyTools;
+import com.easypan.utils.FileSendUtils;
 import com.easypan.utils.StringTools;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
-import java.io.*;
-import java.util.Date;
+import java.io.File;
 
 
 public class ABaseController {
@@ -59,116 +61,39 @@ public class ABaseController {
 
 
     protected void readFile(HttpServletResponse response, String filePath) {
+        readFile(getRequest(), response, filePath);
+    }
+
+    /**
+     * 输出文件，支持断点续传和多线程下载
+     */
+    protected void readFile(HttpServletRequest request, HttpServletResponse response, String filePath) {
         if (!StringTools.pathIsOk(filePath)) {
             return;
         }
-        OutputStream out = null;
-        FileInputStream in = null;
         try {
             File file = new File(filePath);
             if (!file.exists()) {
                 return;
             }
-            in = new FileInputStream(file);
-            byte[] byteData = new byte[1024];
-            out = response.getOutputStream();
-            int len = 0;
-            while ((len = in.read(byteData)) != -1) {
-                out.write(byteData, 0, len);
-            }
-            out.flush();
+            FileSendUtils.serveFile(request, response, file);
         } catch (Exception e) {
             logger.error("读取文件异常", e);
-        } finally {
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    logger.error("IO异常", e);
-                }
-            }
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    logger.error("IO异常", e);
-                }
-            }
         }
     }
 
-    protected void readFile(HttpServletRequest request, HttpServletResponse response, String filePath) {
-        File file = new File(filePath);
-        if (!file.exists()) {
-            return;
+    /**
+     * 设置当前请求输出文件时的限速，为空时不限速
+     */
+    protected void setBandwidthLimit(HttpServletRequest request, BandwidthLimitDto bandwidthLimit) {
+        if (bandwidthLimit != null) {
+            request.setAttribute(Constants.BANDWIDTH_LIMIT_ATTRIBUTE, bandwidthLimit);
         }
-        try (ServletOutputStream out = response.getOutputStream();) {
-
-            RandomAccessFile randomFile = new RandomAccessFile(file, "r");//只读模式
-            long contentLength = randomFile.length();
-            String range = request.getHeader("Range");
-            int start = 0, end = 0;
-            if (range != null && range.startsWith("bytes=")) {
-                String[] values = range.split("=")[1].split("-");
-                start = Integer.parseInt(values[0]);
-                if (values.length > 1) {
-                    end = Integer.parseInt(values[1]);
-                }
-            }
-            int requestSize = 0;
-            if (end != 0 && end > start) {
-                requestSize = end - start + 1;
-            } else {
-                requestSize = Integer.MAX_VALUE;
-            }
+    }
 
-            byte[] buffer = new byte[4096];
-            response.setHeader("Accept-Ranges", "bytes");
-            response.setHeader("Last-Modified", new Date().toString());
-            //第一次请求只返回content length来让客户端请求多次实际数据
-            if (range == null) {
-                response.setHeader("Content-length", contentLength + "");
-            } else {
-                //以后的多次以断点续传的方式来返回视频数据
-                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);//206
-                long requestStart = 0, requestEnd = 0;
-                String[] ranges = range.split("=");
-                if (ranges.length > 1) {
-                    String[] rangeDatas = ranges[1].split("-");
-                    requestStart = Integer.parseInt(rangeDatas[0]);
-                    if (rangeDatas.length > 1) {
-                        requestEnd = Integer.parseInt(rangeDatas[1]);
-                    }
-                }
-                long length = 0;
-                if (requestEnd > 0) {
-                    length = requestEnd - requestStart + 1;
-                    response.setHeader("Content-length", "" + length);
-                    response.setHeader("Content-Range", "bytes " + requestStart + "-" + requestEnd + "/" + contentLength);
-                } else {
-                    length = contentLength - requestStart;
-                    response.setHeader("Content-length", "" + length);
-                    response.setHeader("Content-Range", "bytes " + requestStart + "-" + (contentLength - 1) + "/" + contentLength);
-                }
-            }
-            int needSize = requestSize;
-            randomFile.seek(start);
-            while (needSize > 0) {
-                int len = randomFile.read(buffer);
-                if (needSize < buffer.length) {
-                    out.write(buffer, 0, needSize);
-                } else {
-                    out.write(buffer, 0, len);
-                    if (len < buffer.length) {
-                        break;
-                    }
-                }
-                needSize -= buffer.length;
-            }
-            randomFile.close();
-        } catch (Exception e) {
-            logger.error("读取视频信息失败", e);
-        }
+    private HttpServletRequest getRequest() {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        return attributes == null ? null : attributes.getRequest();
     }
 
     protected <T> ResponseVO getErrorResponseVO(String msg, int code) {
@@ -194,6 +194,8 @@ public class AccountController extends ABaseController {
             avatarPath = appConfig.getProjectFolder() + avatarFolderName + Constants.AVATAR_DEFUALT;
         }
         response.setContentType("image/jpg");
+        //头像可以修改，每次通过ETag验证
+        response.setHeader("Cache-Control", "no-cache");
         readFile(response, avatarPath);
     }
 
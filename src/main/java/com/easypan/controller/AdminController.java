@@ -2,6 +2,7 @@ package com.easypan.controller;
 
 import com.easypan.annotation.GlobalInterceptor;
 import com.easypan.annotation.VerifyParam;
+import com.easypan.component.FileMd5Index;
 import com.easypan.component.RedisComponent;
 import com.easypan.entity.dto.SysSettingsDto;
 import com.easypan.entity.enums.FileDelFlagEnums;
@@ -38,6 +39,9 @@ public class AdminController extends CommonFileController {
     @Resource
     private FileInfoService fileInfoService;
 
+    @Resource
+    private FileMd5Index fileMd5Index;
+
     @RequestMapping(value = "/getSysSettings", method = {RequestMethod.GET, RequestMethod.POST})
     @GlobalInterceptor(checkParams = true, checkAdmin = true)
     public ResponseVO getSysSettings() {
@@ -64,6 +68,15 @@ public class AdminController extends CommonFileController {
         return getSuccessResponseVO(null);
     }
 
+    /**
+     * 秒传md5索引命中统计
+     */
+    @RequestMapping(value = "/getMd5IndexStats", method = {RequestMethod.GET, RequestMethod.POST})
+    @GlobalInterceptor(checkParams = true, checkAdmin = true)
+    public ResponseVO getMd5IndexStats() {
+        return getSuccessResponseVO(fileMd5Index.getStats());
+    }
+
     @RequestMapping(value = "/loadUserList", method = {RequestMethod.GET, RequestMethod.POST})
     @GlobalInterceptor(checkParams = true, checkAdmin = true)
     public ResponseVO loadUser(UserInfoQuery userInfoQuery) {
@@ -139,7 +152,7 @@ public class AdminController extends CommonFileController {
     @GlobalInterceptor(checkParams = true, checkAdmin = true)
     public ResponseVO createDownloadUrl(@PathVariable("userId") @VerifyParam(required = true) String userId,
                                         @PathVariable("fileId") @VerifyParam(required = true) String fileId) {
-        return super.createDownloadUrl(fileId, userId);
+        return super.createDownloadUrl(fileId, userId, null);
     }
 
     /**
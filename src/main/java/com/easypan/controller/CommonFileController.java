@@ -1,8 +1,12 @@
 package com.easypan.controller;
 
+import com.easypan.component.BandwidthLimiter;
+import com.easypan.component.HlsSegmentCache;
+import com.easypan.component.ImageThumbnailer;
 import com.easypan.component.RedisComponent;
 import com.easypan.entity.config.AppConfig;
 import com.easypan.entity.constants.Constants;
+import com.easypan.entity.dto.BandwidthLimitDto;
 import com.easypan.entity.dto.DownloadFileDto;
 import com.easypan.entity.enums.*;
 import com.easypan.entity.po.FileInfo;
@@ -33,6 +37,15 @@ public class CommonFileController extends ABaseController {
     @Resource
     private RedisComponent redisComponent;
 
+    @Resource
+    private HlsSegmentCache hlsSegmentCache;
+
+    @Resource
+    private ImageThumbnailer imageThumbnailer;
+
+    @Resource
+    protected BandwidthLimiter bandwidthLimiter;
+
 
     public ResponseVO getFolderInfo(String path, String userId) {
         String[] pathArray = path.split("/");
@@ -62,33 +75,19 @@ public class CommonFileController extends ABaseController {
     protected void getFile(HttpServletRequest request,HttpServletResponse response, String fileId, String userId) {
         String filePath = null;
         FileTypeEnums fileTypeEnums = null;
-        if (fileId.endsWith(".ts")) {
+        Boolean hlsFile = false;
+        //视频切片，ts切片或fmp4的初始化文件和切片，多码率时还有各档位的播放列表
+        if (fileId.endsWith(".ts") || fileId.endsWith(".m4s") || fileId.endsWith(Constants.HLS_INIT_SUFFIX) || fileId.endsWith(".m3u8")) {
             String[] tsAarray = fileId.split("_");
             String realFileId = tsAarray[0];
-            //根据原文件的id查询出一个文件集合
-            FileInfo fileInfo = fileInfoService.getFileInfoByFileIdAndUserId(realFileId, userId);
+            FileInfo fileInfo = getVideoFileInfo(realFileId, userId);
             if (fileInfo == null) {
-                //分享的视频，ts路径记录的是原视频的id,这里通过id直接取出原视频
-                FileInfoQuery fileInfoQuery = new FileInfoQuery();
-                fileInfoQuery.setFileId(realFileId);
-                List<FileInfo> fileInfoList = fileInfoService.findListByParam(fileInfoQuery);
-                fileInfo = fileInfoList.get(0);
-                if (fileInfo == null) {
-                    return;
-                }
-
-                //更具当前用户id和路径去查询当前用户是否有该文件，如果没有直接返回
-                fileInfoQuery = new FileInfoQuery();
-                fileInfoQuery.setFilePath(fileInfo.getFilePath());
-                fileInfoQuery.setUserId(userId);
-                Integer count = fileInfoService.findCountByParam(fileInfoQuery);
-                if (count == 0) {
-                    return;
-                }
+                return;
             }
-            String fileName = fileInfo.getFilePath();
-            fileName = StringTools.getFileNameNoSuffix(fileName) + "/" + fileId;
-            filePath = appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + fileName;
+            filePath = hlsSegmentCache.getVideoFolder(fileInfo).getPath() + "/" + fileId;
+            hlsFile = true;
+            //切片生成后不会再修改，文件名中有文件id，可以一直缓存；播放列表在按需切片时会追加，每次都需要验证
+            response.setHeader("Cache-Control", fileId.endsWith(".m3u8") ? "private, no-cache" : "private, max-age=31536000, immutable");
         } else {
             FileInfo fileInfo = fileInfoService.getFileInfoByFileIdAndUserId(fileId, userId);
 
@@ -99,26 +98,92 @@ public class CommonFileController extends ABaseController {
             }
             //视频文件读取.m3u8文件
             if (FileCategoryEnums.VIDEO.getCategory().equals(fileInfo.getFileCategory())) {
-                //重新设置文件路径
-                String fileNameNoSuffix = StringTools.getFileNameNoSuffix(fileInfo.getFilePath());
-                filePath = appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + fileNameNoSuffix + "/" + Constants.M3U8_NAME;
+                //重新设置文件路径，按需切片模式下第一次播放时开始切片
+                filePath = hlsSegmentCache.getVideoFolder(fileInfo).getPath() + "/" + Constants.M3U8_NAME;
+                hlsFile = true;
+                response.setHeader("Cache-Control", "private, no-cache");
+            } else if (FileCategoryEnums.IMAGE.getCategory().equals(fileInfo.getFileCategory())) {
+                //图片预览使用屏幕尺寸的预览图，原图通过下载获取
+                File sourceFile = new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + fileInfo.getFilePath());
+                filePath = sourceFile.exists() ? imageThumbnailer.getPreviewFile(sourceFile).getPath() : sourceFile.getPath();
+            } else if (FileTypeEnums.MUSIC == fileTypeEnums) {
+                //有转码后的播放文件时优先使用，原文件通过下载获取
+                filePath = appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + fileInfo.getFilePath();
+                File streamFile = new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE
+                        + StringTools.getFileNameNoSuffix(fileInfo.getFilePath()) + Constants.AUDIO_STREAM_SUFFIX);
+                if (streamFile.exists()) {
+                    filePath = streamFile.getPath();
+                    response.setContentType("audio/mp4");
+                }
             } else {
                 filePath = appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + fileInfo.getFilePath();
             }
         }
         File file = new File(filePath);
         if (!file.exists()) {
+            //按需切片还没有生成，让播放器稍后重试，不占用请求线程等待
+            if (hlsFile && appConfig.getVideoHlsLazy()) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                response.setHeader("Retry-After", "1");
+                response.setHeader("Cache-Control", "no-store");
+            }
             return;
         }
-        if (fileTypeEnums==FileTypeEnums.MUSIC) {
-            readFile(request,response, filePath);
-        }else{
-            readFile(response, filePath);
+        readFile(request, response, filePath);
+    }
+
+    /**
+     * 获取视频文件，分享的视频切片路径记录的是原视频的id，当前用户有相同文件时也可以访问
+     */
+    private FileInfo getVideoFileInfo(String realFileId, String userId) {
+        //根据原文件的id查询出一个文件集合
+        FileInfo fileInfo = fileInfoService.getFileInfoByFileIdAndUserId(realFileId, userId);
+        if (fileInfo == null) {
+            //分享的视频，ts路径记录的是原视频的id,这里通过id直接取出原视频
+            FileInfoQuery fileInfoQuery = new FileInfoQuery();
+            fileInfoQuery.setFileId(realFileId);
+            List<FileInfo> fileInfoList = fileInfoService.findListByParam(fileInfoQuery);
+            if (fileInfoList.isEmpty()) {
+                return null;
+            }
+            fileInfo = fileInfoList.get(0);
+
+            //更具当前用户id和路径去查询当前用户是否有该文件，如果没有直接返回
+            fileInfoQuery = new FileInfoQuery();
+            fileInfoQuery.setFilePath(fileInfo.getFilePath());
+            fileInfoQuery.setUserId(userId);
+            Integer count = fileInfoService.findCountByParam(fileInfoQuery);
+            if (count == 0) {
+                return null;
+            }
         }
+        return fileInfo;
+    }
 
+    /**
+     * 获取视频拖动预览的雪碧图和WebVTT缩略图轨道
+     */
+    protected void getVideoSprite(HttpServletResponse response, String fileName, String userId) {
+        String suffix;
+        if (fileName.endsWith(Constants.VIDEO_SPRITE_SUFFIX)) {
+            suffix = Constants.VIDEO_SPRITE_SUFFIX;
+            response.setContentType("image/jpeg");
+        } else if (fileName.endsWith(Constants.VIDEO_SPRITE_VTT_SUFFIX)) {
+            suffix = Constants.VIDEO_SPRITE_VTT_SUFFIX;
+            response.setContentType("text/vtt;charset=UTF-8");
+        } else {
+            return;
+        }
+        FileInfo fileInfo = getVideoFileInfo(fileName.split("_")[0], userId);
+        if (fileInfo == null || !FileCategoryEnums.VIDEO.getCategory().equals(fileInfo.getFileCategory())) {
+            return;
+        }
+        String filePath = appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + StringTools.getFileNameNoSuffix(fileInfo.getFilePath()) + suffix;
+        response.setHeader("Cache-Control", "max-age=2592000");
+        readFile(response, filePath);
     }
 
-    protected ResponseVO createDownloadUrl(String fileId, String userId) {
+    protected ResponseVO createDownloadUrl(String fileId, String userId, BandwidthLimitDto bandwidthLimit) {
         FileInfo fileInfo = fileInfoService.getFileInfoByFileIdAndUserId(fileId, userId);
         if (fileInfo == null) {
             throw new BusinessException(ResponseCodeEnum.CODE_600);
@@ -131,6 +196,7 @@ public class CommonFileController extends ABaseController {
         downloadFileDto.setDownloadCode(code);
         downloadFileDto.setFilePath(fileInfo.getFilePath());
         downloadFileDto.setFileName(fileInfo.getFileName());
+        downloadFileDto.setBandwidthLimit(bandwidthLimit);
 
         redisComponent.saveDownloadCode(code, downloadFileDto);
 
@@ -144,6 +210,7 @@ public class CommonFileController extends ABaseController {
         }
         String filePath = appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + downloadFileDto.getFilePath();
         String fileName = downloadFileDto.getFileName();
+        setBandwidthLimit(request, downloadFileDto.getBandwidthLimit());
         response.setContentType("application/x-msdownload; charset=UTF-8");
         if (request.getHeader("User-Agent").toLowerCase().indexOf("msie") > 0) {//IE浏览器
             fileName = URLEncoder.encode(fileName, "UTF-8");
@@ -151,6 +218,6 @@ public class CommonFileController extends ABaseController {
             fileName = new String(fileName.getBytes("UTF-8"), "ISO8859-1");
         }
         response.setHeader("Content-Disposition", "attachment;filename=\"" + fileName + "\"");
-        readFile(response, filePath);
+        readFile(request, response, filePath);
     }
 }
@@ -3,18 +3,23 @@ package com.easypan.controller;
 import com.easypan.annotation.GlobalInterceptor;
 import com.easypan.annotation.VerifyParam;
 import com.easypan.entity.dto.SessionWebUserDto;
+import com.easypan.entity.dto.UploadManifestDto;
 import com.easypan.entity.dto.UploadResultDto;
 import com.easypan.entity.enums.FileCategoryEnums;
 import com.easypan.entity.enums.FileDelFlagEnums;
 import com.easypan.entity.enums.FileFolderTypeEnums;
+import com.easypan.entity.enums.ResponseCodeEnum;
 import com.easypan.entity.po.FileInfo;
 import com.easypan.entity.query.FileInfoQuery;
 import com.easypan.entity.vo.FileInfoVO;
 import com.easypan.entity.vo.PaginationResultVO;
 import com.easypan.entity.vo.ResponseVO;
+import com.easypan.exception.BusinessException;
 import com.easypan.utils.CopyTools;
 import com.easypan.utils.StringTools;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
@@ -22,6 +27,8 @@ import org.springframework.web.multipart.MultipartFile;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.net.URLDecoder;
 import java.util.List;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -65,10 +72,55 @@ public class FileInfoController extends CommonFileController {
         if (webUserDto == null) {
             return getErrorResponseVO("未登录或会话已失效", 901);
         }
+        //分片序号超出范围时位图计数会提前达到分片数，缺少分片时就开始合并
+        if (chunks <= 0 || chunkIndex < 0 || chunkIndex >= chunks) {
+            throw new BusinessException(ResponseCodeEnum.CODE_600);
+        }
         UploadResultDto resultDto = fileInfoService.uploadFile(webUserDto, fileId, file, fileName, filePid, fileMd5, chunkIndex, chunks);
         return getSuccessResponseVO(resultDto);
     }
 
+    /**
+     * 请求体直接作为分片内容上传，分片信息放在请求头中，不经过multipart解析和临时文件
+     * 文件名需要url编码
+     */
+    @PutMapping("/uploadChunk")
+    @GlobalInterceptor
+    public ResponseVO uploadChunk(HttpServletRequest request, HttpSession session,
+                                  @RequestHeader(value = "X-File-Id", required = false) String fileId,
+                                  @RequestHeader("X-File-Name") String fileName,
+                                  @RequestHeader("X-File-Pid") String filePid,
+                                  @RequestHeader("X-File-Md5") String fileMd5,
+                                  @RequestHeader("X-Chunk-Index") Integer chunkIndex,
+                                  @RequestHeader("X-Chunks") Integer chunks) throws IOException {
+        SessionWebUserDto webUserDto = getUserInfoFromSession(session);
+        if (webUserDto == null) {
+            return getErrorResponseVO("未登录或会话已失效", 901);
+        }
+        long chunkSize = request.getContentLengthLong();
+        if (chunkSize < 0 || chunkSize > appConfig.getUploadStreamChunkMaxSize() || chunks <= 0 || chunkIndex < 0 || chunkIndex >= chunks) {
+            throw new BusinessException(ResponseCodeEnum.CODE_600);
+        }
+        fileName = URLDecoder.decode(fileName, "UTF-8");
+        UploadResultDto resultDto = fileInfoService.uploadFile(webUserDto, fileId, request.getInputStream(), chunkSize, fileName, filePid, fileMd5,
+                chunkIndex, chunks);
+        return getSuccessResponseVO(resultDto);
+    }
+
+    /**
+     * 断点续传，查询已上传的分片
+     */
+    @RequestMapping(value = "/uploadManifest", method = {RequestMethod.GET, RequestMethod.POST})
+    @GlobalInterceptor(checkParams = true)
+    public ResponseVO uploadManifest(HttpSession session, @VerifyParam(required = true) String fileId) {
+        SessionWebUserDto webUserDto = getUserInfoFromSession(session);
+        if (webUserDto == null) {
+            return getErrorResponseVO("未登录或会话已失效", 901);
+        }
+        UploadManifestDto manifestDto = fileInfoService.getUploadManifest(webUserDto, fileId);
+        return getSuccessResponseVO(manifestDto);
+    }
+
 
     @RequestMapping("/getImage/{imageFolder}/{imageName}")
     public void getImage(HttpServletResponse response, @PathVariable("imageFolder") String imageFolder, @PathVariable("imageName") String imageName) {
@@ -78,12 +130,20 @@ public class FileInfoController extends CommonFileController {
     @RequestMapping("/ts/getVideoInfo/{fileId}")
     public void getVideoInfo(HttpServletRequest request, HttpServletResponse response, HttpSession session, @PathVariable("fileId") @VerifyParam(required = true) String fileId) {
         SessionWebUserDto webUserDto = getUserInfoFromSession(session);
+        setBandwidthLimit(request, bandwidthLimiter.getUserDownloadLimit(webUserDto));
         super.getFile(request, response, fileId, webUserDto.getUserId());
     }
 
+    @RequestMapping("/ts/getVideoSprite/{fileName}")
+    public void getVideoSprite(HttpServletResponse response, HttpSession session, @PathVariable("fileName") @VerifyParam(required = true) String fileName) {
+        SessionWebUserDto webUserDto = getUserInfoFromSession(session);
+        super.getVideoSprite(response, fileName, webUserDto.getUserId());
+    }
+
     @RequestMapping("/getFile/{fileId}")
     public void getFile(HttpServletRequest request, HttpServletResponse response, HttpSession session, @PathVariable("fileId") @VerifyParam(required = true) String fileId) {
         SessionWebUserDto webUserDto = getUserInfoFromSession(session);
+        setBandwidthLimit(request, bandwidthLimiter.getUserDownloadLimit(webUserDto));
         super.getFile(request, response, fileId, webUserDto.getUserId());
     }
 
@@ -152,7 +212,8 @@ public class FileInfoController extends CommonFileController {
     @GetMapping("/createDownloadUrl/{fileId}")
     @GlobalInterceptor(checkParams = true)
     public ResponseVO createDownloadUrl(HttpSession session, @PathVariable("fileId") @VerifyParam(required = true) String fileId) {
-        return super.createDownloadUrl(fileId, getUserInfoFromSession(session).getUserId());
+        SessionWebUserDto webUserDto = getUserInfoFromSession(session);
+        return super.createDownloadUrl(fileId, webUserDto.getUserId(), bandwidthLimiter.getUserDownloadLimit(webUserDto));
     }
 
     @RequestMapping("/download/{code}")
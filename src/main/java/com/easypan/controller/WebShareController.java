@@ -186,6 +186,7 @@ public class WebShareController extends CommonFileController {
                         @PathVariable("shareId") @VerifyParam(required = true) String shareId,
                         @PathVariable("fileId") @VerifyParam(required = true) String fileId) {
         SessionShareDto shareSessionDto = checkShare(session, shareId);
+        setBandwidthLimit(request, bandwidthLimiter.getShareDownloadLimit(shareId));
         super.getFile(request, response, fileId, shareSessionDto.getShareUserId());
     }
 
@@ -195,16 +196,25 @@ public class WebShareController extends CommonFileController {
                              @PathVariable("shareId") @VerifyParam(required = true) String shareId,
                              @PathVariable("fileId") @VerifyParam(required = true) String fileId) {
         SessionShareDto shareSessionDto = checkShare(session, shareId);
+        setBandwidthLimit(request, bandwidthLimiter.getShareDownloadLimit(shareId));
         super.getFile(request, response, fileId, shareSessionDto.getShareUserId());
     }
 
+    @RequestMapping("/ts/getVideoSprite/{shareId}/{fileName}")
+    public void getVideoSprite(HttpServletResponse response, HttpSession session,
+                               @PathVariable("shareId") @VerifyParam(required = true) String shareId,
+                               @PathVariable("fileName") @VerifyParam(required = true) String fileName) {
+        SessionShareDto shareSessionDto = checkShare(session, shareId);
+        super.getVideoSprite(response, fileName, shareSessionDto.getShareUserId());
+    }
+
     @RequestMapping("/createDownloadUrl/{shareId}/{fileId}")
     @GlobalInterceptor(checkLogin = false, checkParams = true)
     public ResponseVO createDownloadUrl(HttpSession session,
                                         @PathVariable("shareId") @VerifyParam(required = true) String shareId,
                                         @PathVariable("fileId") @VerifyParam(required = true) String fileId) {
         SessionShareDto shareSessionDto = checkShare(session, shareId);
-        return super.createDownloadUrl(fileId, shareSessionDto.getShareUserId());
+        return super.createDownloadUrl(fileId, shareSessionDto.getShareUserId(), bandwidthLimiter.getShareDownloadLimit(shareId));
     }
 
     /**
@@ -59,6 +59,174 @@ public class AppConfig {
     @Value("${qq.url.redirect:}")
     private String qqUrlRedirect;
 
+    /**
+     * 原地写入上传模式，分片直接写入目标文件，不经过临时目录和合并
+     */
+    @Value("${upload.write.in.place:false}")
+    private Boolean uploadWriteInPlace;
+
+    /**
+     * 分片大小，原地写入模式按 分片序号*分片大小 计算写入位置，需要与前端分片大小一致
+     */
+    @Value("${upload.chunk.size:5242880}")
+    private Long uploadChunkSize;
+
+    /**
+     * 请求体直接上传分片时单个分片的最大字节数
+     */
+    @Value("${upload.stream.chunk.max.size:67108864}")
+    private Long uploadStreamChunkMaxSize;
+
+    /**
+     * 转码任务并发数
+     */
+    @Value("${transfer.job.workers:2}")
+    private Integer transferJobWorkers;
+
+    /**
+     * 转码任务最大执行次数
+     */
+    @Value("${transfer.job.max.attempts:3}")
+    private Integer transferJobMaxAttempts;
+
+    /**
+     * 转码任务执行超时时间，单位秒
+     */
+    @Value("${transfer.job.lock.seconds:300}")
+    private Long transferJobLockSeconds;
+
+    /**
+     * 转码任务首次重试间隔，单位秒
+     */
+    @Value("${transfer.job.retry.delay.seconds:60}")
+    private Long transferJobRetryDelaySeconds;
+
+    /**
+     * 同时运行的ffmpeg/ffprobe进程数上限
+     */
+    @Value("${process.max.concurrent:4}")
+    private Integer processMaxConcurrent;
+
+    /**
+     * 外部进程执行超时时间，单位秒
+     */
+    @Value("${process.timeout.seconds:3600}")
+    private Long processTimeoutSeconds;
+
+    /**
+     * 视频切片格式 ts或fmp4
+     */
+    @Value("${video.hls.segment.type:ts}")
+    private String videoHlsSegmentType;
+
+    /**
+     * 直接复制不转码的视频编码，逗号分隔
+     */
+    @Value("${video.copy.video.codecs:h264}")
+    private String videoCopyVideoCodecs;
+
+    /**
+     * 直接复制不转码的音频编码，逗号分隔
+     */
+    @Value("${video.copy.audio.codecs:aac,mp3}")
+    private String videoCopyAudioCodecs;
+
+    /**
+     * 多码率档位，格式为 高度:码率kbps，逗号分隔
+     */
+    @Value("${video.abr.ladder:}")
+    private String videoAbrLadder;
+
+    /**
+     * 按需切片，上传时不切片，第一次播放时切片
+     */
+    @Value("${video.hls.lazy:false}")
+    private Boolean videoHlsLazy;
+
+    /**
+     * 切片缓存目录大小上限，单位字节
+     */
+    @Value("${video.hls.cache.max.size:10737418240}")
+    private Long videoHlsCacheMaxSize;
+
+    /**
+     * 按需切片同时执行的切片数，超出时排队
+     */
+    @Value("${video.hls.lazy.workers:2}")
+    private Integer videoHlsLazyWorkers;
+
+    /**
+     * 秒传md5布隆过滤器预计容量
+     */
+    @Value("${md5.index.expected.insertions:1000000}")
+    private Long md5IndexExpectedInsertions;
+
+    /**
+     * 秒传md5布隆过滤器误判率
+     */
+    @Value("${md5.index.fpp:0.01}")
+    private Double md5IndexFpp;
+
+    /**
+     * 秒传md5本地缓存数量
+     */
+    @Value("${md5.index.cache.size:10000}")
+    private Integer md5IndexCacheSize;
+
+    /**
+     * 图片缩略图同时解码的图片数量
+     */
+    @Value("${image.thumbnail.workers:2}")
+    private Integer imageThumbnailWorkers;
+
+    /**
+     * 音频播放使用的转码码率，单位kbps
+     */
+    @Value("${audio.stream.bit.rate:128}")
+    private Integer audioStreamBitRate;
+
+    /**
+     * 文件输出交给前置服务器，nginx:X-Accel-Redirect apache:X-Sendfile，为空时由应用输出
+     */
+    @Value("${file.offload.mode:}")
+    private String fileOffloadMode;
+
+    /**
+     * nginx中指向项目目录的internal location
+     */
+    @Value("${file.offload.nginx.location:/protected_files/}")
+    private String fileOffloadNginxLocation;
+
+    /**
+     * 普通用户下载限速，单位KB/s，0不限速
+     */
+    @Value("${bandwidth.download.user.rate:0}")
+    private Long bandwidthDownloadUserRate;
+
+    /**
+     * 管理员下载限速，单位KB/s，0不限速
+     */
+    @Value("${bandwidth.download.admin.rate:0}")
+    private Long bandwidthDownloadAdminRate;
+
+    /**
+     * 每个分享链接的下载限速，单位KB/s，0不限速
+     */
+    @Value("${bandwidth.download.share.rate:0}")
+    private Long bandwidthDownloadShareRate;
+
+    /**
+     * 普通用户上传限速，单位KB/s，0不限速
+     */
+    @Value("${bandwidth.upload.user.rate:0}")
+    private Long bandwidthUploadUserRate;
+
+    /**
+     * 管理员上传限速，单位KB/s，0不限速
+     */
+    @Value("${bandwidth.upload.admin.rate:0}")
+    private Long bandwidthUploadAdminRate;
+
 
     public String getProjectFolder() {
         if (!StringTools.isEmpty(projectFolder) && !projectFolder.endsWith("/")) {
@@ -106,4 +274,116 @@ public class AppConfig {
     public String getQqUrlRedirect() {
         return qqUrlRedirect;
     }
+
+    public Boolean getUploadWriteInPlace() {
+        return uploadWriteInPlace;
+    }
+
+    public Long getUploadChunkSize() {
+        return uploadChunkSize;
+    }
+
+    public Long getUploadStreamChunkMaxSize() {
+        return uploadStreamChunkMaxSize;
+    }
+
+    public Integer getTransferJobWorkers() {
+        return transferJobWorkers;
+    }
+
+    public Integer getTransferJobMaxAttempts() {
+        return transferJobMaxAttempts;
+    }
+
+    public Long getTransferJobLockSeconds() {
+        return transferJobLockSeconds;
+    }
+
+    public Long getTransferJobRetryDelaySeconds() {
+        return transferJobRetryDelaySeconds;
+    }
+
+    public Integer getProcessMaxConcurrent() {
+        return processMaxConcurrent;
+    }
+
+    public Long getProcessTimeoutSeconds() {
+        return processTimeoutSeconds;
+    }
+
+    public String getVideoHlsSegmentType() {
+        return videoHlsSegmentType;
+    }
+
+    public String getVideoCopyVideoCodecs() {
+        return videoCopyVideoCodecs;
+    }
+
+    public String getVideoCopyAudioCodecs() {
+        return videoCopyAudioCodecs;
+    }
+
+    public String getVideoAbrLadder() {
+        return videoAbrLadder;
+    }
+
+    public Boolean getVideoHlsLazy() {
+        return videoHlsLazy;
+    }
+
+    public Long getVideoHlsCacheMaxSize() {
+        return videoHlsCacheMaxSize;
+    }
+
+    public Integer getVideoHlsLazyWorkers() {
+        return videoHlsLazyWorkers;
+    }
+
+    public Long getMd5IndexExpectedInsertions() {
+        return md5IndexExpectedInsertions;
+    }
+
+    public Double getMd5IndexFpp() {
+        return md5IndexFpp;
+    }
+
+    public Integer getMd5IndexCacheSize() {
+        return md5IndexCacheSize;
+    }
+
+    public Integer getImageThumbnailWorkers() {
+        return imageThumbnailWorkers;
+    }
+
+    public Integer getAudioStreamBitRate() {
+        return audioStreamBitRate;
+    }
+
+    public String getFileOffloadMode() {
+        return fileOffloadMode;
+    }
+
+    public String getFileOffloadNginxLocation() {
+        return fileOffloadNginxLocation;
+    }
+
+    public Long getBandwidthDownloadUserRate() {
+        return bandwidthDownloadUserRate;
+    }
+
+    public Long getBandwidthDownloadAdminRate() {
+        return bandwidthDownloadAdminRate;
+    }
+
+    public Long getBandwidthDownloadShareRate() {
+        return bandwidthDownloadShareRate;
+    }
+
+    public Long getBandwidthUploadUserRate() {
+        return bandwidthUploadUserRate;
+    }
+
+    public Long getBandwidthUploadAdminRate() {
+        return bandwidthUploadAdminRate;
+    }
 }
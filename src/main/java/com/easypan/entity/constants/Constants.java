@@ -21,6 +21,8 @@ public class Constants {
 
     public static final Integer LENGTH_50 = 50;
 
+    public static final Integer LENGTH_1920 = 1920;
+
     public static final String SESSION_KEY = "session_key";
 
     public static final String SESSION_SHARE_KEY = "session_share_key_";
@@ -29,12 +31,35 @@ public class Constants {
 
     public static final String FILE_FOLDER_TEMP = "/temp/";
 
+    public static final String FILE_FOLDER_HLS_CACHE = "/hls_cache/";
+
     public static final String IMAGE_PNG_SUFFIX = ".png";
 
+    public static final String IMAGE_PREVIEW_SUFFIX = "_preview";
+
     public static final String TS_NAME = "index.ts";
 
     public static final String M3U8_NAME = "index.m3u8";
 
+    public static final String HLS_SEGMENT_TYPE_FMP4 = "fmp4";
+
+    public static final String HLS_INIT_SUFFIX = "_init.mp4";
+
+    /**
+     * 按需切片完成的标记文件，没有标记的切片目录是中断的切片
+     */
+    public static final String HLS_COMPLETE_MARKER = ".complete";
+
+    public static final String FILE_OFFLOAD_NGINX = "nginx";
+
+    public static final String FILE_OFFLOAD_APACHE = "apache";
+
+    public static final String VIDEO_SPRITE_SUFFIX = "_sprite.jpg";
+
+    public static final String VIDEO_SPRITE_VTT_SUFFIX = "_sprite.vtt";
+
+    public static final String AUDIO_STREAM_SUFFIX = "_stream.m4a";
+
     public static final String CHECK_CODE_KEY = "check_code_key";
 
     public static final String CHECK_CODE_KEY_EMAIL = "check_code_key_email";
@@ -77,6 +102,29 @@ public class Constants {
 
     public static final String REDIS_KEY_USER_SPACE_USE = "easypan:user:spaceuse:";
 
-    public static final String REDIS_KEY_USER_FILE_TEMP_SIZE = "easypan:user:file:temp:";
+    public static final String REDIS_KEY_USER_SPACE_USED = "easypan:user:space:used:";
+
+    public static final String REDIS_KEY_USER_SPACE_RESERVE = "easypan:user:space:reserve:";
+
+    public static final String REDIS_KEY_USER_SPACE_RESERVE_TIME = "easypan:user:space:reserve:time:";
+
+    public static final String REDIS_KEY_USER_SPACE_PENDING = "easypan:user:space:pending:";
+
+    public static final String REDIS_KEY_USER_FILE_UPLOAD_MONTH = "easypan:user:file:month:";
+
+    public static final String REDIS_KEY_USER_FILE_CHUNKS = "easypan:user:file:chunks:";
+
+    public static final String REDIS_KEY_USER_FILE_DIGEST = "easypan:user:file:digest:";
+
+    public static final String REDIS_KEY_USER_FILE_DIGEST_LOCK = "easypan:user:file:digest:lock:";
+
+    public static final String REDIS_KEY_HLS_PACKAGING_LOCK = "easypan:hls:packaging:lock:";
+
+    public static final String REDIS_KEY_BANDWIDTH = "easypan:bandwidth:";
+
+    /**
+     * 当前请求的限速，由controller设置，输出文件时读取
+     */
+    public static final String BANDWIDTH_LIMIT_ATTRIBUTE = "easypan_bandwidth_limit";
 
 }
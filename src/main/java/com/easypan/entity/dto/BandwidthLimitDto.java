@@ -0,0 +1,43 @@
+package com.easypan.entity.dto;
+
+import java.io.Serializable;
+
+/**
+ * 限速对象，同一个key的所有连接共用一个令牌桶
+ */
+public class BandwidthLimitDto implements Serializable {
+
+    /**
+     * 令牌桶key，user:用户id 或 share:分享id
+     */
+    private String key;
+
+    /**
+     * 每秒字节数
+     */
+    private Long rate;
+
+    public BandwidthLimitDto() {
+    }
+
+    public BandwidthLimitDto(String key, Long rate) {
+        this.key = key;
+        this.rate = rate;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public Long getRate() {
+        return rate;
+    }
+
+    public void setRate(Long rate) {
+        this.rate = rate;
+    }
+}
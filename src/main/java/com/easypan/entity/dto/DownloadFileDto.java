@@ -5,6 +5,18 @@ public class DownloadFileDto {
     private String fileId;
     private String fileName;
     private String filePath;
+    /**
+     * 生成下载链接时的限速，下载时使用
+     */
+    private BandwidthLimitDto bandwidthLimit;
+
+    public BandwidthLimitDto getBandwidthLimit() {
+        return bandwidthLimit;
+    }
+
+    public void setBandwidthLimit(BandwidthLimitDto bandwidthLimit) {
+        this.bandwidthLimit = bandwidthLimit;
+    }
 
     public String getDownloadCode() {
         return downloadCode;
@@ -0,0 +1,38 @@
+package com.easypan.entity.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.io.Serializable;
+
+/**
+ * 上传中文件的md5计算进度
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class FileDigestDto implements Serializable {
+
+    /**
+     * 下一个需要计算的分片序号
+     */
+    private Integer nextChunkIndex = 0;
+
+    /**
+     * md5中间状态
+     */
+    private String digestState;
+
+    public Integer getNextChunkIndex() {
+        return nextChunkIndex;
+    }
+
+    public void setNextChunkIndex(Integer nextChunkIndex) {
+        this.nextChunkIndex = nextChunkIndex;
+    }
+
+    public String getDigestState() {
+        return digestState;
+    }
+
+    public void setDigestState(String digestState) {
+        this.digestState = digestState;
+    }
+}
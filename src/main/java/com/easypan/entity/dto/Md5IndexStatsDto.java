@@ -0,0 +1,101 @@
+package com.easypan.entity.dto;
+
+import java.io.Serializable;
+
+/**
+ * 秒传md5索引统计
+ */
+public class Md5IndexStatsDto implements Serializable {
+
+    private Boolean bloomReady;
+
+    private Long bloomBitSize;
+
+    private Integer bloomHashCount;
+
+    private Integer cacheSize;
+
+    /**
+     * 布隆过滤器判定不存在，跳过数据库的次数
+     */
+    private Long bloomSkipCount;
+
+    /**
+     * 本地缓存命中次数
+     */
+    private Long cacheHitCount;
+
+    /**
+     * 查询数据库命中次数
+     */
+    private Long dbHitCount;
+
+    /**
+     * 查询数据库未命中次数，即布隆过滤器误判或重建未完成
+     */
+    private Long dbMissCount;
+
+    public Boolean getBloomReady() {
+        return bloomReady;
+    }
+
+    public void setBloomReady(Boolean bloomReady) {
+        this.bloomReady = bloomReady;
+    }
+
+    public Long getBloomBitSize() {
+        return bloomBitSize;
+    }
+
+    public void setBloomBitSize(Long bloomBitSize) {
+        this.bloomBitSize = bloomBitSize;
+    }
+
+    public Integer getBloomHashCount() {
+        return bloomHashCount;
+    }
+
+    public void setBloomHashCount(Integer bloomHashCount) {
+        this.bloomHashCount = bloomHashCount;
+    }
+
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(Integer cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public Long getBloomSkipCount() {
+        return bloomSkipCount;
+    }
+
+    public void setBloomSkipCount(Long bloomSkipCount) {
+        this.bloomSkipCount = bloomSkipCount;
+    }
+
+    public Long getCacheHitCount() {
+        return cacheHitCount;
+    }
+
+    public void setCacheHitCount(Long cacheHitCount) {
+        this.cacheHitCount = cacheHitCount;
+    }
+
+    public Long getDbHitCount() {
+        return dbHitCount;
+    }
+
+    public void setDbHitCount(Long dbHitCount) {
+        this.dbHitCount = dbHitCount;
+    }
+
+    public Long getDbMissCount() {
+        return dbMissCount;
+    }
+
+    public void setDbMissCount(Long dbMissCount) {
+        this.dbMissCount = dbMissCount;
+    }
+}
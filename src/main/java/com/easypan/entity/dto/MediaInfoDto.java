@@ -0,0 +1,85 @@
+package com.easypan.entity.dto;
+
+import java.io.Serializable;
+
+/**
+ * ffprobe获取的音视频信息
+ */
+public class MediaInfoDto implements Serializable {
+
+    /**
+     * 时长，毫秒
+     */
+    private Long duration;
+
+    private Integer width;
+
+    private Integer height;
+
+    private String videoCodec;
+
+    private String audioCodec;
+
+    /**
+     * 码率，bps
+     */
+    private Long bitRate;
+
+    private Integer audioChannels;
+
+    public Long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(Long duration) {
+        this.duration = duration;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public String getVideoCodec() {
+        return videoCodec;
+    }
+
+    public void setVideoCodec(String videoCodec) {
+        this.videoCodec = videoCodec;
+    }
+
+    public String getAudioCodec() {
+        return audioCodec;
+    }
+
+    public void setAudioCodec(String audioCodec) {
+        this.audioCodec = audioCodec;
+    }
+
+    public Long getBitRate() {
+        return bitRate;
+    }
+
+    public void setBitRate(Long bitRate) {
+        this.bitRate = bitRate;
+    }
+
+    public Integer getAudioChannels() {
+        return audioChannels;
+    }
+
+    public void setAudioChannels(Integer audioChannels) {
+        this.audioChannels = audioChannels;
+    }
+}
@@ -0,0 +1,48 @@
+package com.easypan.entity.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 断点续传 已上传分片清单
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class UploadManifestDto implements Serializable {
+    private String fileId;
+
+    /**
+     * 已上传的分片序号
+     */
+    private List<Integer> uploadedChunks;
+
+    /**
+     * 已上传的字节数
+     */
+    private Long uploadedSize;
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public List<Integer> getUploadedChunks() {
+        return uploadedChunks;
+    }
+
+    public void setUploadedChunks(List<Integer> uploadedChunks) {
+        this.uploadedChunks = uploadedChunks;
+    }
+
+    public Long getUploadedSize() {
+        return uploadedSize;
+    }
+
+    public void setUploadedSize(Long uploadedSize) {
+        this.uploadedSize = uploadedSize;
+    }
+}
@@ -0,0 +1,25 @@
+package com.easypan.entity.enums;
+
+
+public enum TransferJobStatusEnums {
+    WAITING(0, "待执行"),
+    RUNNING(1, "执行中"),
+    FINISHED(2, "已完成"),
+    FAIL(3, "已失败");
+
+    private Integer status;
+    private String desc;
+
+    TransferJobStatusEnums(Integer status, String desc) {
+        this.status = status;
+        this.desc = desc;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
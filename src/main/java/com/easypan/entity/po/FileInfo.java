@@ -104,6 +104,41 @@ public class FileInfo implements Serializable {
      */
     private Integer delFlag;
 
+    /**
+     * 时长，毫秒
+     */
+    private Long duration;
+
+    /**
+     * 视频宽度
+     */
+    private Integer width;
+
+    /**
+     * 视频高度
+     */
+    private Integer height;
+
+    /**
+     * 视频编码
+     */
+    private String videoCodec;
+
+    /**
+     * 音频编码
+     */
+    private String audioCodec;
+
+    /**
+     * 码率，bps
+     */
+    private Long bitRate;
+
+    /**
+     * 音频声道数
+     */
+    private Integer audioChannels;
+
     private String nickName;
 
     public String getNickName() {
@@ -242,6 +277,62 @@ public class FileInfo implements Serializable {
         return this.delFlag;
     }
 
+    public void setDuration(Long duration) {
+        this.duration = duration;
+    }
+
+    public Long getDuration() {
+        return this.duration;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getWidth() {
+        return this.width;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public Integer getHeight() {
+        return this.height;
+    }
+
+    public void setVideoCodec(String videoCodec) {
+        this.videoCodec = videoCodec;
+    }
+
+    public String getVideoCodec() {
+        return this.videoCodec;
+    }
+
+    public void setAudioCodec(String audioCodec) {
+        this.audioCodec = audioCodec;
+    }
+
+    public String getAudioCodec() {
+        return this.audioCodec;
+    }
+
+    public void setBitRate(Long bitRate) {
+        this.bitRate = bitRate;
+    }
+
+    public Long getBitRate() {
+        return this.bitRate;
+    }
+
+    public void setAudioChannels(Integer audioChannels) {
+        this.audioChannels = audioChannels;
+    }
+
+    public Integer getAudioChannels() {
+        return this.audioChannels;
+    }
+
     @Override
     public String toString() {
         return "文件ID:" + (fileId == null ? "空" : fileId) + "，用户ID:" + (userId == null ? "空" : userId) + "，md5值，第一次上传记录:" + (fileMd5 == null ? "空" : fileMd5) + "，父级ID:" + (filePid == null ? "空" : filePid) + "，文件大小:" + (fileSize == null ? "空" : fileSize) + "，文件名称:" + (fileName == null ? "空" : fileName) + "，封面:" + (fileCover == null ? "空" : fileCover) + "，文件路径:" + (filePath == null ? "空" : filePath) + "，创建时间:" + (createTime == null ? "空" : DateUtil.format(createTime, DateTimePatternEnum.YYYY_MM_DD_HH_MM_SS.getPattern())) + "，最后更新时间:" + (lastUpdateTime == null ? "空" : DateUtil.format(lastUpdateTime, DateTimePatternEnum.YYYY_MM_DD_HH_MM_SS.getPattern())) + "，0:文件 1:目录:" + (folderType == null ? "空" : folderType) + "，1:视频 2:音频  3:图片 4:文档 5:其他:" + (fileCategory == null ? "空" : fileCategory) + "， 1:视频 2:音频  3:图片 4:pdf 5:doc 6:excel 7:txt 8:code 9:zip 10:其他:" + (fileType == null ? "空" : fileType) + "，0:转码中 1转码失败 2:转码成功:" + (status == null ? "空" : status) + "，回收站时间:" + (recoveryTime == null ? "空" : DateUtil.format(recoveryTime, DateTimePatternEnum.YYYY_MM_DD_HH_MM_SS.getPattern())) + "，删除标记 0:删除  1:回收站  2:正常:" + (delFlag == null ? "空" : delFlag);
@@ -0,0 +1,184 @@
+package com.easypan.entity.po;
+
+import com.easypan.entity.enums.DateTimePatternEnum;
+import com.easypan.utils.DateUtil;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.io.Serializable;
+import java.util.Date;
+
+
+/**
+ * 文件转码任务
+ */
+public class FileTransferJob implements Serializable {
+
+
+    /**
+     * 任务ID
+     */
+    private Long jobId;
+
+    /**
+     * 文件ID
+     */
+    private String fileId;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 优先级，越大越先执行
+     */
+    private Integer priority;
+
+    /**
+     * 0:待执行 1:执行中 2:已完成 3:已失败
+     */
+    private Integer status;
+
+    /**
+     * 已执行次数
+     */
+    private Integer attemptCount;
+
+    /**
+     * 下次可执行时间
+     */
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss", timezone = "GMT+8")
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date nextRunTime;
+
+    /**
+     * 执行节点
+     */
+    private String lockOwner;
+
+    /**
+     * 执行超时时间，超时后其他节点可以重新领取
+     */
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss", timezone = "GMT+8")
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date lockExpireTime;
+
+    /**
+     * 创建时间
+     */
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss", timezone = "GMT+8")
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date createTime;
+
+    /**
+     * 最后更新时间
+     */
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss", timezone = "GMT+8")
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date lastUpdateTime;
+
+
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+
+    public Long getJobId() {
+        return this.jobId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public String getFileId() {
+        return this.fileId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getUserId() {
+        return this.userId;
+    }
+
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
+    public Integer getPriority() {
+        return this.priority;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public Integer getStatus() {
+        return this.status;
+    }
+
+    public void setAttemptCount(Integer attemptCount) {
+        this.attemptCount = attemptCount;
+    }
+
+    public Integer getAttemptCount() {
+        return this.attemptCount;
+    }
+
+    public void setNextRunTime(Date nextRunTime) {
+        this.nextRunTime = nextRunTime;
+    }
+
+    public Date getNextRunTime() {
+        return this.nextRunTime;
+    }
+
+    public void setLockOwner(String lockOwner) {
+        this.lockOwner = lockOwner;
+    }
+
+    public String getLockOwner() {
+        return this.lockOwner;
+    }
+
+    public void setLockExpireTime(Date lockExpireTime) {
+        this.lockExpireTime = lockExpireTime;
+    }
+
+    public Date getLockExpireTime() {
+        return this.lockExpireTime;
+    }
+
+    public void setCreateTime(Date createTime) {
+        this.createTime = createTime;
+    }
+
+    public Date getCreateTime() {
+        return this.createTime;
+    }
+
+    public void setLastUpdateTime(Date lastUpdateTime) {
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    public Date getLastUpdateTime() {
+        return this.lastUpdateTime;
+    }
+
+    @Override
+    public String toString() {
+        return "任务ID:" + (jobId == null ? "空" : jobId) + "，"
+                + "文件ID:" + (fileId == null ? "空" : fileId) + "，"
+                + "用户ID:" + (userId == null ? "空" : userId) + "，"
+                + "优先级:" + (priority == null ? "空" : priority) + "，"
+                + "0:待执行 1:执行中 2:已完成 3:已失败:" + (status == null ? "空" : status) + "，"
+                + "已执行次数:" + (attemptCount == null ? "空" : attemptCount) + "，"
+                + "下次可执行时间:" + (nextRunTime == null ? "空" : DateUtil.format(nextRunTime, DateTimePatternEnum.YYYY_MM_DD_HH_MM_SS.getPattern())) + "，"
+                + "执行节点:" + (lockOwner == null ? "空" : lockOwner) + "，"
+                + "执行超时时间:" + (lockExpireTime == null ? "空" : DateUtil.format(lockExpireTime, DateTimePatternEnum.YYYY_MM_DD_HH_MM_SS.getPattern())) + "，"
+                + "创建时间:" + (createTime == null ? "空" : DateUtil.format(createTime, DateTimePatternEnum.YYYY_MM_DD_HH_MM_SS.getPattern())) + "，"
+                + "最后更新时间:" + (lastUpdateTime == null ? "空" : DateUtil.format(lastUpdateTime, DateTimePatternEnum.YYYY_MM_DD_HH_MM_SS.getPattern()));
+    }
+}
@@ -0,0 +1,75 @@
+package com.easypan.entity.query;
+
+
+/**
+ * 文件转码任务参数
+ */
+public class FileTransferJobQuery extends BaseParam {
+
+
+    /**
+     * 任务ID
+     */
+    private Long jobId;
+
+    /**
+     * 文件ID
+     */
+    private String fileId;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 0:待执行 1:执行中 2:已完成 3:已失败
+     */
+    private Integer status;
+
+    /**
+     * 执行节点
+     */
+    private String lockOwner;
+
+
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+
+    public Long getJobId() {
+        return this.jobId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public String getFileId() {
+        return this.fileId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getUserId() {
+        return this.userId;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public Integer getStatus() {
+        return this.status;
+    }
+
+    public void setLockOwner(String lockOwner) {
+        this.lockOwner = lockOwner;
+    }
+
+    public String getLockOwner() {
+        return this.lockOwner;
+    }
+}
@@ -65,6 +65,41 @@ public class FileInfoVO {
      */
     private Integer status;
 
+    /**
+     * 时长，毫秒
+     */
+    private Long duration;
+
+    /**
+     * 视频宽度
+     */
+    private Integer width;
+
+    /**
+     * 视频高度
+     */
+    private Integer height;
+
+    /**
+     * 视频编码
+     */
+    private String videoCodec;
+
+    /**
+     * 音频编码
+     */
+    private String audioCodec;
+
+    /**
+     * 码率，bps
+     */
+    private Long bitRate;
+
+    /**
+     * 音频声道数
+     */
+    private Integer audioChannels;
+
     public String getFileId() {
         return fileId;
     }
@@ -152,4 +187,60 @@ public class FileInfoVO {
     public void setLastUpdateTime(Date lastUpdateTime) {
         this.lastUpdateTime = lastUpdateTime;
     }
+
+    public Long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(Long duration) {
+        this.duration = duration;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public String getVideoCodec() {
+        return videoCodec;
+    }
+
+    public void setVideoCodec(String videoCodec) {
+        this.videoCodec = videoCodec;
+    }
+
+    public String getAudioCodec() {
+        return audioCodec;
+    }
+
+    public void setAudioCodec(String audioCodec) {
+        this.audioCodec = audioCodec;
+    }
+
+    public Long getBitRate() {
+        return bitRate;
+    }
+
+    public void setBitRate(Long bitRate) {
+        this.bitRate = bitRate;
+    }
+
+    public Integer getAudioChannels() {
+        return audioChannels;
+    }
+
+    public void setAudioChannels(Integer audioChannels) {
+        this.audioChannels = audioChannels;
+    }
 }
@@ -2,6 +2,7 @@ package com.easypan.mappers;
 
 import com.easypan.entity.po.FileInfo;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.util.List;
 
@@ -46,4 +47,9 @@ public interface FileInfoMapper<T, P> extends BaseMapper<T, P> {
     Long selectUseSpace(@Param("userId") String userId);
 
     void deleteFileByUserId(@Param("userId") String userId);
+
+    /**
+     * 流式读取所有md5，用于重建秒传索引
+     */
+    void selectAllMd5(@Param("status") Integer status, ResultHandler<String> resultHandler);
 }
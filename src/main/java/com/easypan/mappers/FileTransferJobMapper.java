@@ -0,0 +1,55 @@
+package com.easypan.mappers;
+
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 文件转码任务 数据库操作接口
+ */
+public interface FileTransferJobMapper<T, P> extends BaseMapper<T, P> {
+
+    /**
+     * 根据JobId更新
+     */
+    Integer updateByJobId(@Param("bean") T t, @Param("jobId") Long jobId);
+
+
+    /**
+     * 根据JobId删除
+     */
+    Integer deleteByJobId(@Param("jobId") Long jobId);
+
+
+    /**
+     * 根据JobId获取对象
+     */
+    T selectByJobId(@Param("jobId") Long jobId);
+
+    /**
+     * 文件没有任务时新增
+     */
+    Integer insertIgnore(@Param("bean") T t);
+
+    /**
+     * 查询可领取的任务
+     */
+    List<Long> selectRunnableJobIds(@Param("curDate") Date curDate, @Param("limit") Integer limit);
+
+    /**
+     * 领取任务
+     */
+    Integer claimJob(@Param("jobId") Long jobId, @Param("lockOwner") String lockOwner, @Param("lockExpireTime") Date lockExpireTime,
+                     @Param("curDate") Date curDate);
+
+    /**
+     * 延长执行中任务的超时时间
+     */
+    Integer renewJobs(@Param("jobIds") List<Long> jobIds, @Param("lockOwner") String lockOwner, @Param("lockExpireTime") Date lockExpireTime);
+
+    /**
+     * 持有任务的节点更新任务，同时释放任务，bean中不要设置lockOwner
+     */
+    Integer updateByJobIdAndOwner(@Param("bean") T t, @Param("jobId") Long jobId, @Param("lockOwner") String lockOwner);
+}
@@ -1,6 +1,7 @@
 package com.easypan.service;
 
 import com.easypan.entity.dto.SessionWebUserDto;
+import com.easypan.entity.dto.UploadManifestDto;
 import com.easypan.entity.dto.UploadResultDto;
 import com.easypan.entity.po.FileInfo;
 import com.easypan.entity.query.FileInfoQuery;
@@ -9,6 +10,7 @@ import org.apache.ibatis.annotations.Param;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 
@@ -67,6 +69,22 @@ public interface FileInfoService {
     UploadResultDto uploadFile(SessionWebUserDto webUserDto, String fileId, MultipartFile file, String fileName, String filePid, String fileMd5, Integer chunkIndex,
                                Integer chunks);
 
+    /**
+     * 请求体直接作为分片内容上传，不经过multipart解析和临时文件
+     */
+    UploadResultDto uploadFile(SessionWebUserDto webUserDto, String fileId, InputStream inputStream, Long chunkSize, String fileName, String filePid, String fileMd5,
+                               Integer chunkIndex, Integer chunks);
+
+    /**
+     * 合并分片并转码，由转码任务调用
+     *
+     * @param lastAttempt 是否是最后一次执行
+     * @return 是否执行成功
+     */
+    Boolean transferFile(String fileId, String userId, Boolean lastAttempt);
+
+    UploadManifestDto getUploadManifest(SessionWebUserDto webUserDto, String fileId);
+
     FileInfo rename(String fileId, String userId, String fileName);
 
     FileInfo newFolder(String filePid, String userId, String folderName);
@@ -1,9 +1,18 @@
 package com.easypan.service.impl;
 
+import com.easypan.component.BandwidthLimiter;
+import com.easypan.component.FileMd5Index;
+import com.easypan.component.FileTransferJobQueue;
+import com.easypan.component.HlsPackager;
+import com.easypan.component.ImageThumbnailer;
 import com.easypan.component.RedisComponent;
 import com.easypan.entity.config.AppConfig;
 import com.easypan.entity.constants.Constants;
+import com.easypan.entity.dto.BandwidthLimitDto;
+import com.easypan.entity.dto.FileDigestDto;
+import com.easypan.entity.dto.MediaInfoDto;
 import com.easypan.entity.dto.SessionWebUserDto;
+import com.easypan.entity.dto.UploadManifestDto;
 import com.easypan.entity.dto.UploadResultDto;
 import com.easypan.entity.dto.UserSpaceDto;
 import com.easypan.entity.enums.*;
@@ -17,15 +26,17 @@ import com.easypan.exception.BusinessException;
 import com.easypan.mappers.FileInfoMapper;
 import com.easypan.mappers.UserInfoMapper;
 import com.easypan.service.FileInfoService;
+import com.easypan.task.FileTransferJobTask;
 import com.easypan.utils.DateUtil;
-import com.easypan.utils.ProcessUtils;
+import com.easypan.utils.IncrementalMd5;
+import com.easypan.utils.MediaProbeUtils;
 import com.easypan.utils.ScaleFilter;
 import com.easypan.utils.StringTools;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronization;
@@ -35,7 +46,16 @@ import org.springframework.web.multipart.MultipartFile;
 import javax.annotation.Resource;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -49,10 +69,33 @@ public class FileInfoServiceImpl implements FileInfoService {
 
     private static final Logger logger = LoggerFactory.getLogger(FileInfoServiceImpl.class);
 
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 无损音频编码
+     */
+    private static final List<String> LOSSLESS_AUDIO_CODECS = Arrays.asList("flac", "alac", "ape", "wavpack", "tta", "truehd", "mlp");
+
     @Resource
     @Lazy
     private FileInfoServiceImpl fileInfoService;
 
+    @Resource
+    private FileTransferJobQueue fileTransferJobQueue;
+
+    @Resource
+    private HlsPackager hlsPackager;
+
+    @Resource
+    private ImageThumbnailer imageThumbnailer;
+
+    @Resource
+    private BandwidthLimiter bandwidthLimiter;
+
+    @Resource
+    @Lazy
+    private FileTransferJobTask fileTransferJobTask;
+
     @Resource
     private AppConfig appConfig;
 
@@ -66,6 +109,9 @@ public class FileInfoServiceImpl implements FileInfoService {
     @Resource
     private RedisComponent redisComponent;
 
+    @Resource
+    private FileMd5Index fileMd5Index;
+
 
     /**
      * 根据条件查询列表
@@ -154,11 +200,36 @@ public class FileInfoServiceImpl implements FileInfoService {
 
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public UploadResultDto uploadFile(SessionWebUserDto webUserDto, String fileId, MultipartFile file, String fileName, String filePid, String fileMd5,
                                       Integer chunkIndex, Integer chunks) {
+        return uploadChunk(webUserDto, fileId, file, null, file == null ? 0L : file.getSize(), fileName, filePid, fileMd5, chunkIndex, chunks);
+    }
+
+    @Override
+    public UploadResultDto uploadFile(SessionWebUserDto webUserDto, String fileId, InputStream inputStream, Long chunkSize, String fileName, String filePid,
+                                      String fileMd5, Integer chunkIndex, Integer chunks) {
+        return uploadChunk(webUserDto, fileId, null, inputStream, chunkSize, fileName, filePid, fileMd5, chunkIndex, chunks);
+    }
+
+    /**
+     * 分片写入和空间校验不在事务中，避免慢速上传长时间占用数据库连接，只有最后记录文件信息时开启事务
+     *
+     * @param file        multipart上传的分片，为空时从inputStream读取
+     * @param inputStream 请求体上传的分片
+     * @param chunkSize   分片大小
+     */
+    private UploadResultDto uploadChunk(SessionWebUserDto webUserDto, String fileId, MultipartFile file, InputStream inputStream, Long chunkSize,
+                                        String fileName, String filePid, String fileMd5, Integer chunkIndex, Integer chunks) {
         File tempFileFolder = null;
+        File inPlaceFile = null;
+        File chunkFile = null;
         Boolean uploadSuccess = true;
+        Boolean digestLocked = false;
+        Boolean instantReserved = false;
+        Boolean spaceReserved = false;
+        Boolean chunkWriting = false;
+        Boolean chunkMarked = false;
+        Boolean chunkExists = false;
         try {
             UploadResultDto resultDto = new UploadResultDto();
             if (StringTools.isEmpty(fileId)) {
@@ -168,18 +239,16 @@ public class FileInfoServiceImpl implements FileInfoService {
             Date curDate = new Date();
             UserSpaceDto spaceDto = redisComponent.getUserSpaceUse(webUserDto.getUserId());
             if (chunkIndex == 0) {
-                FileInfoQuery infoQuery = new FileInfoQuery();
-                infoQuery.setFileMd5(fileMd5);
-                infoQuery.setSimplePage(new SimplePage(0, 1));
-                infoQuery.setStatus(FileStatusEnums.USING.getStatus());
-                List<FileInfo> dbFileList = this.fileInfoMapper.selectList(infoQuery);
+                FileInfo dbFile = fileMd5Index.getUsingFile(fileMd5);
                 //秒传
-                if (!dbFileList.isEmpty()) {
-                    FileInfo dbFile = dbFileList.get(0);
+                if (dbFile != null) {
+                    //并发上传时其他分片可能已经在第一个分片之前写入，秒传后不再需要
+                    discardUpload(webUserDto.getUserId(), fileId, fileName);
                     //判断文件状态
-                    if (dbFile.getFileSize() + spaceDto.getUseSpace() > spaceDto.getTotalSpace()) {
+                    if (!redisComponent.reserveUserSpace(webUserDto.getUserId(), fileId, dbFile.getFileSize(), spaceDto.getTotalSpace())) {
                         throw new BusinessException(ResponseCodeEnum.CODE_904);
                     }
+                    instantReserved = true;
                     dbFile.setFileId(fileId);
                     dbFile.setFilePid(filePid);
                     dbFile.setUserId(webUserDto.getUserId());
@@ -189,48 +258,91 @@ public class FileInfoServiceImpl implements FileInfoService {
                     dbFile.setStatus(FileStatusEnums.USING.getStatus());
                     dbFile.setDelFlag(FileDelFlagEnums.USING.getFlag());
                     dbFile.setFileMd5(fileMd5);
-                    fileName = autoRename(filePid, webUserDto.getUserId(), fileName);
                     dbFile.setFileName(fileName);
-                    this.fileInfoMapper.insert(dbFile);
+                    fileInfoService.saveUploadFileInfo(webUserDto, dbFile, dbFile.getFileSize(), false);
                     resultDto.setStatus(UploadStatusEnums.UPLOAD_SECONDS.getCode());
-                    //更新用户空间使用
-                    updateUserSpace(webUserDto, dbFile.getFileSize());
-
                     return resultDto;
                 }
             }
-            //暂存在临时目录
-            String tempFolderName = appConfig.getProjectFolder() + Constants.FILE_FOLDER_TEMP;
             String currentUserFolderName = webUserDto.getUserId() + fileId;
-            //创建临时目录
-            tempFileFolder = new File(tempFolderName + currentUserFolderName);
-            if (!tempFileFolder.exists()) {
-                tempFileFolder.mkdirs();
-            }
-
-            //判断磁盘空间
-            Long currentTempSize = redisComponent.getFileTempSize(webUserDto.getUserId(), fileId);
-            if (file.getSize() + currentTempSize + spaceDto.getUseSpace() > spaceDto.getTotalSpace()) {
+            //判断磁盘空间，已用、其他上传中文件的预占和本分片一起原子校验并预占，并发上传不会超出总空间
+            if (!redisComponent.reserveUserSpace(webUserDto.getUserId(), fileId, chunkSize, spaceDto.getTotalSpace())) {
                 throw new BusinessException(ResponseCodeEnum.CODE_904);
             }
-
-            File newFile = new File(tempFileFolder.getPath() + "/" + chunkIndex);
-            file.transferTo(newFile);
-            //保存临时大小
-            redisComponent.saveFileTempSize(webUserDto.getUserId(), fileId, file.getSize());
-            //不是最后一个分片，直接返回
-            if (chunkIndex < chunks - 1) {
+            spaceReserved = true;
+            //流式计算md5，按顺序到达的分片在写入的同时计算，乱序到达的分片在补齐后从磁盘补算
+            IncrementalMd5 md5 = null;
+            FileDigestDto digestDto = redisComponent.getFileDigest(webUserDto.getUserId(), fileId);
+            if (chunkIndex.equals(digestDto.getNextChunkIndex()) && redisComponent.lockFileDigest(webUserDto.getUserId(), fileId)) {
+                digestLocked = true;
+                digestDto = redisComponent.getFileDigest(webUserDto.getUserId(), fileId);
+                if (chunkIndex.equals(digestDto.getNextChunkIndex())) {
+                    md5 = IncrementalMd5.fromState(digestDto.getDigestState());
+                }
+            }
+            String month = DateUtil.format(curDate, DateTimePatternEnum.YYYYMM.getPattern());
+            //上传限速，同一用户的所有分片共用额度
+            BandwidthLimitDto uploadLimit = bandwidthLimiter.getUserUploadLimit(webUserDto);
+            if (appConfig.getUploadWriteInPlace()) {
+                //原地写入，分片直接写到目标文件对应位置
+                month = redisComponent.getFileUploadMonth(webUserDto.getUserId(), fileId, month);
+                File targetFolder = new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + month);
+                if (!targetFolder.exists()) {
+                    targetFolder.mkdirs();
+                }
+                inPlaceFile = new File(targetFolder.getPath() + "/" + currentUserFolderName + StringTools.getFileSuffix(fileName));
+                chunkWriting = true;
+                writeChunkInPlace(uploadStream(file, inputStream, uploadLimit), chunkSize, inPlaceFile, chunkIndex, chunks, md5);
+            } else {
+                //暂存在临时目录
+                String tempFolderName = appConfig.getProjectFolder() + Constants.FILE_FOLDER_TEMP;
+                //创建临时目录
+                tempFileFolder = new File(tempFolderName + currentUserFolderName);
+                if (!tempFileFolder.exists()) {
+                    tempFileFolder.mkdirs();
+                }
+                chunkFile = new File(tempFileFolder.getPath() + "/" + chunkIndex);
+                chunkWriting = true;
+                if (file != null && md5 == null && uploadLimit == null) {
+                    file.transferTo(chunkFile);
+                } else {
+                    try (FileChannel writeChannel = FileChannel.open(chunkFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                        writeChunk(uploadStream(file, inputStream, uploadLimit), chunkSize, writeChannel, 0, md5);
+                    }
+                }
+            }
+            //分片位图中标记，分片可以乱序并发上传
+            List<Long> chunkMark = redisComponent.markFileChunk(webUserDto.getUserId(), fileId, chunkIndex);
+            chunkMarked = true;
+            chunkExists = chunkMark.get(0) == 1;
+            Long uploadedChunks = chunkMark.get(1);
+            //重传的分片不重复占用空间
+            if (chunkExists) {
+                redisComponent.releaseUserSpace(webUserDto.getUserId(), fileId, chunkSize);
+                spaceReserved = false;
+            }
+            if (md5 != null) {
+                Integer nextChunkIndex = digestChunkArrived(md5, webUserDto.getUserId(), fileId, chunkIndex + 1, chunks, tempFileFolder, inPlaceFile);
+                digestDto.setNextChunkIndex(nextChunkIndex);
+                digestDto.setDigestState(md5.exportState());
+                redisComponent.saveFileDigest(webUserDto.getUserId(), fileId, digestDto);
+            }
+            //分片未全部到达，直接返回
+            if (uploadedChunks < chunks) {
                 resultDto.setStatus(UploadStatusEnums.UPLOADING.getCode());
                 return resultDto;
             }
-            //最后一个分片上传完成，记录数据库，异步合并分片
-            String month = DateUtil.format(curDate, DateTimePatternEnum.YYYYMM.getPattern());
+            //分片已全部到达且已由其他请求完成上传，重传的分片不再重复记录
+            if (chunkExists) {
+                resultDto.setStatus(UploadStatusEnums.UPLOAD_FINISH.getCode());
+                return resultDto;
+            }
+            //所有分片上传完成，记录数据库，异步合并分片
             String fileSuffix = StringTools.getFileSuffix(fileName);
             //真实文件名
             String realFileName = currentUserFolderName + fileSuffix;
             FileTypeEnums fileTypeEnum = FileTypeEnums.getFileTypeBySuffix(fileSuffix);
-            //自动重命名
-            fileName = autoRename(filePid, webUserDto.getUserId(), fileName);
             FileInfo fileInfo = new FileInfo();
             fileInfo.setFileId(fileId);
             fileInfo.setUserId(webUserDto.getUserId());
@@ -245,19 +357,12 @@ public class FileInfoServiceImpl implements FileInfoService {
             fileInfo.setStatus(FileStatusEnums.TRANSFER.getStatus());
             fileInfo.setFolderType(FileFolderTypeEnums.FILE.getType());
             fileInfo.setDelFlag(FileDelFlagEnums.USING.getFlag());
-            this.fileInfoMapper.insert(fileInfo);
-
             Long totalSize = redisComponent.getFileTempSize(webUserDto.getUserId(), fileId);
-            updateUserSpace(webUserDto, totalSize);
+            //记录上传的总大小，合并后校验文件大小，转码完成后更新为实际大小
+            fileInfo.setFileSize(totalSize);
+            fileInfoService.saveUploadFileInfo(webUserDto, fileInfo, totalSize, true);
 
             resultDto.setStatus(UploadStatusEnums.UPLOAD_FINISH.getCode());
-            //事务提交后调用异步方法
-            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                @Override
-                public void afterCommit() {
-                    fileInfoService.transferFile(fileInfo.getFileId(), webUserDto);
-                }
-            });
             return resultDto;
         } catch (BusinessException e) {
             uploadSuccess = false;
@@ -268,25 +373,283 @@ public class FileInfoServiceImpl implements FileInfoService {
             logger.error("文件上传失败", e);
             throw new BusinessException("文件上传失败");
         } finally {
-            //如果上传失败，清除临时目录
-            if (tempFileFolder != null && !uploadSuccess) {
-                try {
-                    FileUtils.deleteDirectory(tempFileFolder);
-                } catch (IOException e) {
-                    logger.error("删除临时目录失败");
+            if (digestLocked) {
+                redisComponent.unlockFileDigest(webUserDto.getUserId(), fileId);
+            }
+            //秒传失败时释放秒传的预占
+            if (!uploadSuccess && instantReserved) {
+                redisComponent.cleanFileUpload(webUserDto.getUserId(), fileId);
+            }
+            //分片上传失败只回退本分片：取消标记、释放本分片的预占、删除本分片的临时文件，其他分片和上传进度保留，可以续传
+            //本分片写入开始后数据已不可信，除非是已完整写入的重传分片；原地写入时本分片的区间保留在目标文件中，重传时覆盖
+            if (!uploadSuccess && chunkWriting && !(chunkMarked && chunkExists)) {
+                redisComponent.unmarkFileChunk(webUserDto.getUserId(), fileId, chunkIndex);
+                if (chunkFile != null) {
+                    chunkFile.delete();
+                }
+            }
+            if (!uploadSuccess && spaceReserved) {
+                redisComponent.releaseUserSpace(webUserDto.getUserId(), fileId, chunkSize);
+            }
+        }
+    }
+
+    /**
+     * 丢弃上传中的分片，清除上传进度和预占的空间，删除临时目录和原地写入的目标文件
+     */
+    private void discardUpload(String userId, String fileId, String fileName) {
+        String month = redisComponent.getSavedFileUploadMonth(userId, fileId);
+        redisComponent.cleanFileUpload(userId, fileId);
+        FileUtils.deleteQuietly(new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_TEMP + userId + fileId));
+        if (month != null) {
+            FileUtils.deleteQuietly(new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE + month + "/" + userId + fileId
+                    + StringTools.getFileSuffix(fileName)));
+        }
+    }
+
+    /**
+     * 记录上传完成的文件信息并更新用户空间
+     *
+     * @param webUserDto
+     * @param fileInfo
+     * @param useSpace     占用的空间
+     * @param needTransfer 是否需要转码，需要时在事务提交后异步合并转码
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void saveUploadFileInfo(SessionWebUserDto webUserDto, FileInfo fileInfo, Long useSpace, Boolean needTransfer) {
+        //自动重命名
+        fileInfo.setFileName(autoRename(fileInfo.getFilePid(), webUserDto.getUserId(), fileInfo.getFileName()));
+        this.fileInfoMapper.insert(fileInfo);
+        //更新用户空间使用
+        updateUserSpace(webUserDto, fileInfo.getFileId(), useSpace);
+        if (!needTransfer) {
+            return;
+        }
+        //转码任务和文件信息在同一个事务中保存，事务提交后立即尝试领取执行
+        fileTransferJobQueue.enqueue(fileInfo);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                fileTransferJobTask.poll();
+            }
+        });
+    }
+
+    private InputStream uploadStream(MultipartFile file, InputStream inputStream, BandwidthLimitDto uploadLimit) throws IOException {
+        return bandwidthLimiter.limitStream(file != null ? file.getInputStream() : inputStream, uploadLimit);
+    }
+
+    /**
+     * 原地写入分片，第N个分片写入目标文件 N*分片大小 的位置
+     */
+    private void writeChunkInPlace(InputStream inputStream, long size, File targetFile, Integer chunkIndex, Integer chunks, IncrementalMd5 md5)
+            throws IOException {
+        long chunkSize = appConfig.getUploadChunkSize();
+        //除最后一个分片外，分片大小必须和配置一致，否则写入位置会错乱
+        if (chunkIndex < chunks - 1 && size != chunkSize) {
+            throw new BusinessException("分片大小与服务端配置不一致");
+        }
+        preallocate(targetFile, (chunks - 1) * chunkSize);
+        long position = chunkIndex * chunkSize;
+        try (FileChannel writeChannel = FileChannel.open(targetFile.toPath(), StandardOpenOption.WRITE)) {
+            writeChunk(inputStream, size, writeChannel, position, md5);
+        }
+    }
+
+    /**
+     * 将分片写入文件指定位置，需要计算md5时边写边算
+     */
+    private static void writeChunk(InputStream inputStream, long size, FileChannel writeChannel, long position, IncrementalMd5 md5) throws IOException {
+        if (md5 != null) {
+            writeChunkWithDigest(inputStream, size, writeChannel, position, md5);
+            return;
+        }
+        try (ReadableByteChannel readChannel = Channels.newChannel(inputStream)) {
+            long written = 0;
+            while (written < size) {
+                long len = writeChannel.transferFrom(readChannel, position + written, size - written);
+                if (len <= 0) {
+                    break;
+                }
+                written += len;
+            }
+            if (written != size) {
+                throw new BusinessException("分片写入不完整");
+            }
+        }
+    }
+
+    /**
+     * 写入分片的同时计算md5
+     */
+    private static void writeChunkWithDigest(InputStream inputStream, long size, FileChannel writeChannel, long position, IncrementalMd5 md5) throws IOException {
+        byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+        long written = 0;
+        try (InputStream in = inputStream) {
+            int len;
+            while (written < size && (len = in.read(buffer, 0, (int) Math.min(buffer.length, size - written))) != -1) {
+                md5.update(buffer, 0, len);
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, len);
+                while (byteBuffer.hasRemaining()) {
+                    writeChannel.write(byteBuffer, position + written + byteBuffer.position());
+                }
+                written += len;
+            }
+        }
+        if (written != size) {
+            throw new BusinessException("分片写入不完整");
+        }
+    }
+
+    /**
+     * 从磁盘读取文件的一段计算md5
+     */
+    private static void digestFile(IncrementalMd5 md5, File file, long position, long length) throws IOException {
+        byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+        try (FileChannel readChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long read = 0;
+            while (read < length) {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, length - read));
+                int len = readChannel.read(byteBuffer, position + read);
+                if (len == -1) {
+                    throw new BusinessException("计算md5时文件长度不足");
                 }
+                md5.update(buffer, 0, len);
+                read += len;
             }
         }
     }
 
-    private void updateUserSpace(SessionWebUserDto webUserDto, Long totalSize) {
+    /**
+     * 当前分片计算完成后，补算之前乱序到达的后续分片
+     *
+     * @return 下一个需要计算的分片序号
+     */
+    private Integer digestChunkArrived(IncrementalMd5 md5, String userId, String fileId, Integer nextChunkIndex, Integer chunks, File tempFileFolder,
+                                       File inPlaceFile) throws IOException {
+        List<Integer> chunkList = redisComponent.getFileChunks(userId, fileId);
+        if (chunkList == null) {
+            return nextChunkIndex;
+        }
+        Set<Integer> chunkSet = new HashSet<>(chunkList);
+        while (nextChunkIndex < chunks && chunkSet.contains(nextChunkIndex)) {
+            if (inPlaceFile != null) {
+                long chunkSize = appConfig.getUploadChunkSize();
+                long position = nextChunkIndex * chunkSize;
+                long length = nextChunkIndex == chunks - 1 ? inPlaceFile.length() - position : chunkSize;
+                digestFile(md5, inPlaceFile, position, length);
+            } else {
+                File chunkFile = new File(tempFileFolder.getPath() + "/" + nextChunkIndex);
+                digestFile(md5, chunkFile, 0, chunkFile.length());
+            }
+            nextChunkIndex++;
+        }
+        return nextChunkIndex;
+    }
+
+    /**
+     * 合并完成后结束md5计算，只需从合并后的文件补算上传时未能按顺序计算的部分
+     */
+    private String finishFileDigest(String userId, String fileId, File targetFile) throws IOException {
+        FileDigestDto digestDto = redisComponent.getFileDigest(userId, fileId);
+        IncrementalMd5 md5 = IncrementalMd5.fromState(digestDto.getDigestState());
+        if (md5.getCount() > targetFile.length()) {
+            md5 = new IncrementalMd5();
+        }
+        digestFile(md5, targetFile, md5.getCount(), targetFile.length() - md5.getCount());
+        redisComponent.removeFileDigest(userId, fileId);
+        return md5.digestHex();
+    }
+
+    /**
+     * 预分配目标文件，先在临时文件上设置长度再硬链接到目标位置，并发分片中只有一个能创建成功，不会截断其他分片已写入的数据
+     */
+    private static void preallocate(File targetFile, long length) throws IOException {
+        if (targetFile.exists()) {
+            return;
+        }
+        File allocateFile = new File(targetFile.getPath() + "." + StringTools.getRandomString(Constants.LENGTH_5));
+        try {
+            try (RandomAccessFile randomFile = new RandomAccessFile(allocateFile, "rw")) {
+                randomFile.setLength(length);
+            }
+            Files.createLink(targetFile.toPath(), allocateFile.toPath());
+        } catch (FileAlreadyExistsException e) {
+            //其他分片已经创建
+        } finally {
+            allocateFile.delete();
+        }
+    }
+
+    @Override
+    public UploadManifestDto getUploadManifest(SessionWebUserDto webUserDto, String fileId) {
+        String userId = webUserDto.getUserId();
+        List<Integer> chunkList = redisComponent.getFileChunks(userId, fileId);
+        if (chunkList == null) {
+            //redis索引已过期，根据临时目录中的分片重建
+            chunkList = new ArrayList<>();
+            File tempFileFolder = new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_TEMP + userId + fileId);
+            File[] chunkFiles = tempFileFolder.listFiles();
+            if (chunkFiles != null && chunkFiles.length > 0) {
+                redisComponent.cleanFileUpload(userId, fileId);
+                long tempSize = 0;
+                for (File chunkFile : chunkFiles) {
+                    if (StringUtils.isNumeric(chunkFile.getName())) {
+                        tempSize += chunkFile.length();
+                    }
+                }
+                //重新预占已上传分片的空间，和上传分片一样校验总空间
+                if (!redisComponent.reserveUserSpace(userId, fileId, tempSize, redisComponent.getUserSpaceUse(userId).getTotalSpace())) {
+                    throw new BusinessException(ResponseCodeEnum.CODE_904);
+                }
+                for (File chunkFile : chunkFiles) {
+                    if (!StringUtils.isNumeric(chunkFile.getName())) {
+                        continue;
+                    }
+                    Integer chunkIndex = Integer.parseInt(chunkFile.getName());
+                    redisComponent.markFileChunk(userId, fileId, chunkIndex);
+                    chunkList.add(chunkIndex);
+                }
+                Collections.sort(chunkList);
+            }
+        }
+        UploadManifestDto manifestDto = new UploadManifestDto();
+        manifestDto.setFileId(fileId);
+        manifestDto.setUploadedChunks(chunkList);
+        manifestDto.setUploadedSize(redisComponent.getFileTempSize(userId, fileId));
+        return manifestDto;
+    }
+
+    private void updateUserSpace(SessionWebUserDto webUserDto, String fileId, Long totalSize) {
         Integer count = userInfoMapper.updateUserSpace(webUserDto.getUserId(), totalSize, null);
         if (count == 0) {
             throw new BusinessException(ResponseCodeEnum.CODE_904);
         }
-        UserSpaceDto spaceDto = redisComponent.getUserSpaceUse(webUserDto.getUserId());
-        spaceDto.setUseSpace(spaceDto.getUseSpace() + totalSize);
-        redisComponent.saveUserSpaceUse(webUserDto.getUserId(), spaceDto);
+        //事务提交后预占转为已用，原子操作，不再读取后整体覆盖；提交前标记变更进行中，对账不会在提交和计入之间覆盖已用空间
+        redisComponent.beginUserSpaceChange(webUserDto.getUserId());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    redisComponent.commitUserSpace(webUserDto.getUserId(), fileId, totalSize);
+                } else {
+                    redisComponent.endUserSpaceChange(webUserDto.getUserId(), 0L);
+                }
+            }
+        });
+    }
+
+    /**
+     * 事务提交后按变化量修改已用空间计数，不整体覆盖，并发的上传和删除不会互相覆盖
+     */
+    private void changeUserSpaceUsed(String userId, Long delta) {
+        redisComponent.beginUserSpaceChange(userId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                redisComponent.endUserSpaceChange(userId, status == STATUS_COMMITTED ? delta : 0L);
+            }
+        });
     }
 
     private String autoRename(String filePid, String userId, String fileName) {
@@ -303,27 +666,33 @@ public class FileInfoServiceImpl implements FileInfoService {
         return fileName;
     }
 
-    @Async
-    public void transferFile(String fileId, SessionWebUserDto webUserDto) {
+    /**
+     * 合并分片、校验md5并生成预览，由转码任务调用，可以重复执行
+     *
+     * @param lastAttempt 是否是最后一次执行，最后一次执行失败时将文件置为转码失败，否则保持转码中等待重试
+     * @return 是否执行成功
+     */
+    @Override
+    public Boolean transferFile(String fileId, String userId, Boolean lastAttempt) {
         Boolean transferSuccess = true;
         String targetFilePath = null;
         String cover = null;
+        String realMd5 = null;
         FileTypeEnums fileTypeEnum = null;
-        FileInfo fileInfo = fileInfoMapper.selectByFileIdAndUserId(fileId, webUserDto.getUserId());
+        MediaInfoDto mediaInfo = null;
+        FileInfo fileInfo = fileInfoMapper.selectByFileIdAndUserId(fileId, userId);
         try {
             if (fileInfo == null || !FileStatusEnums.TRANSFER.getStatus().equals(fileInfo.getStatus())) {
-                return;
+                return true;
             }
             //临时目录
             String tempFolderName = appConfig.getProjectFolder() + Constants.FILE_FOLDER_TEMP;
-            String currentUserFolderName = webUserDto.getUserId() + fileId;
+            String currentUserFolderName = userId + fileId;
             File fileFolder = new File(tempFolderName + currentUserFolderName);
-            if (!fileFolder.exists()) {
-                fileFolder.mkdirs();
-            }
             //文件后缀
             String fileSuffix = StringTools.getFileSuffix(fileInfo.getFileName());
-            String month = DateUtil.format(fileInfo.getCreateTime(), DateTimePatternEnum.YYYYMM.getPattern());
+            //月份以上传时记录的路径为准，原地写入模式下月份由第一个分片决定
+            String month = fileInfo.getFilePath().substring(0, fileInfo.getFilePath().indexOf("/"));
             //目标目录
             String targetFolderName = appConfig.getProjectFolder() + Constants.FILE_FOLDER_FILE;
             File targetFolder = new File(targetFolderName + "/" + month);
@@ -334,124 +703,178 @@ public class FileInfoServiceImpl implements FileInfoService {
             String realFileName = currentUserFolderName + fileSuffix;
             //真实文件路径
             targetFilePath = targetFolder.getPath() + "/" + realFileName;
-            //合并文件
-            union(fileFolder.getPath(), targetFilePath, fileInfo.getFileName(), true);
+            //合并文件，原地写入模式分片已经写入目标文件，不需要合并
+            //合并成功后才删除分片，合并中断时重试可以重新合并
+            if (fileFolder.exists()) {
+                union(fileFolder.getPath(), targetFilePath, fileInfo.getFileName(), false, fileInfo.getFileSize());
+                FileUtils.deleteDirectory(fileFolder);
+            } else if (!new File(targetFilePath).exists()) {
+                throw new BusinessException("分片文件不存在");
+            } else if (fileInfo.getFileSize() != null && new File(targetFilePath).length() != fileInfo.getFileSize()) {
+                logger.error("文件:{}大小校验失败,上传大小:{},实际大小:{}", targetFilePath, fileInfo.getFileSize(), new File(targetFilePath).length());
+                throw new BusinessException("文件大小校验失败");
+            }
+            //校验md5，上报的md5与实际内容不一致时以实际内容为准，保证秒传使用的md5可信
+            String digestMd5 = finishFileDigest(userId, fileId, new File(targetFilePath));
+            if (!digestMd5.equals(fileInfo.getFileMd5())) {
+                logger.warn("文件md5校验不一致，文件Id:{},userId:{},上报md5:{},实际md5:{}", fileId, userId, fileInfo.getFileMd5(), digestMd5);
+                realMd5 = digestMd5;
+            }
             //视频文件切割
             fileTypeEnum = FileTypeEnums.getFileTypeBySuffix(fileSuffix);
+            //音视频只获取一次信息，保存后播放和转码都不需要再获取
+            if (FileTypeEnums.VIDEO == fileTypeEnum || FileTypeEnums.MUSIC == fileTypeEnum) {
+                try {
+                    mediaInfo = MediaProbeUtils.probe(targetFilePath);
+                } catch (Exception e) {
+                    logger.warn("获取音视频信息失败，文件Id:{},userId:{}", fileId, userId, e);
+                }
+            }
             if (FileTypeEnums.VIDEO == fileTypeEnum) {
-                cutFile4Video(fileId, targetFilePath);
+                //按需切片模式下第一次播放时再切片
+                if (!appConfig.getVideoHlsLazy()) {
+                    cutFile4Video(fileId, targetFilePath, mediaInfo);
+                }
                 //视频生成缩略图
                 cover = month + "/" + currentUserFolderName + Constants.IMAGE_PNG_SUFFIX;
                 String coverPath = targetFolderName + "/" + cover;
                 ScaleFilter.createCover4Video(new File(targetFilePath), Constants.LENGTH_150, new File(coverPath));
+                //拖动进度条时的预览图
+                ScaleFilter.createSprite4Video(new File(targetFilePath), mediaInfo, new File(targetFolder.getPath() + "/" + currentUserFolderName + Constants.VIDEO_SPRITE_SUFFIX),
+                        new File(targetFolder.getPath() + "/" + currentUserFolderName + Constants.VIDEO_SPRITE_VTT_SUFFIX), fileId + Constants.VIDEO_SPRITE_SUFFIX);
+            } else if (FileTypeEnums.MUSIC == fileTypeEnum && needAudioStream(mediaInfo)) {
+                //无损或高码率音频转为较低码率用于在线播放，下载仍使用原文件
+                ScaleFilter.createStream4Audio(new File(targetFilePath), appConfig.getAudioStreamBitRate(),
+                        new File(targetFolder.getPath() + "/" + currentUserFolderName + Constants.AUDIO_STREAM_SUFFIX));
             } else if (FileTypeEnums.IMAGE == fileTypeEnum) {
                 //生成缩略图
                 cover = month + "/" + realFileName.replace(".", "_.");
                 String coverPath = targetFolderName + "/" + cover;
-                Boolean created = ScaleFilter.createThumbnailWidthFFmpeg(new File(targetFilePath), Constants.LENGTH_150, new File(coverPath), false);
+                Boolean created = imageThumbnailer.createThumbnail(new File(targetFilePath), Constants.LENGTH_150, new File(coverPath));
                 if (!created) {
                     FileUtils.copyFile(new File(targetFilePath), new File(coverPath));
                 }
+                //生成屏幕尺寸的预览图，预览时不需要读取原图
+                imageThumbnailer.getPreviewFile(new File(targetFilePath));
             }
         } catch (Exception e) {
-            logger.error("文件转码失败，文件Id:{},userId:{}", fileId, webUserDto.getUserId(), e);
+            logger.error("文件转码失败，文件Id:{},userId:{}", fileId, userId, e);
             transferSuccess = false;
-        } finally {
-            FileInfo updateInfo = new FileInfo();
-            updateInfo.setFileSize(new File(targetFilePath).length());
-            updateInfo.setFileCover(cover);
-            updateInfo.setStatus(transferSuccess ? FileStatusEnums.USING.getStatus() : FileStatusEnums.TRANSFER_FAIL.getStatus());
-            fileInfoMapper.updateFileStatusWithOldStatus(fileId, webUserDto.getUserId(), updateInfo, FileStatusEnums.TRANSFER.getStatus());
         }
+        //失败且还会重试时保持转码中
+        if (!transferSuccess && !lastAttempt) {
+            return false;
+        }
+        //最后一次执行失败，不会再合并，删除分片目录
+        if (!transferSuccess) {
+            FileUtils.deleteQuietly(new File(appConfig.getProjectFolder() + Constants.FILE_FOLDER_TEMP + userId + fileId));
+        }
+        FileInfo updateInfo = new FileInfo();
+        updateInfo.setFileSize(targetFilePath == null ? null : new File(targetFilePath).length());
+        updateInfo.setFileCover(cover);
+        updateInfo.setFileMd5(realMd5);
+        if (mediaInfo != null) {
+            updateInfo.setDuration(mediaInfo.getDuration());
+            updateInfo.setWidth(mediaInfo.getWidth());
+            updateInfo.setHeight(mediaInfo.getHeight());
+            updateInfo.setVideoCodec(mediaInfo.getVideoCodec());
+            updateInfo.setAudioCodec(mediaInfo.getAudioCodec());
+            updateInfo.setBitRate(mediaInfo.getBitRate());
+            updateInfo.setAudioChannels(mediaInfo.getAudioChannels());
+        }
+        updateInfo.setStatus(transferSuccess ? FileStatusEnums.USING.getStatus() : FileStatusEnums.TRANSFER_FAIL.getStatus());
+        fileInfoMapper.updateFileStatusWithOldStatus(fileId, userId, updateInfo, FileStatusEnums.TRANSFER.getStatus());
+        if (transferSuccess) {
+            updateInfo.setFileMd5(realMd5 == null ? fileInfo.getFileMd5() : realMd5);
+            updateInfo.setFilePath(fileInfo.getFilePath());
+            updateInfo.setFolderType(fileInfo.getFolderType());
+            updateInfo.setFileCategory(fileInfo.getFileCategory());
+            updateInfo.setFileType(fileInfo.getFileType());
+            fileMd5Index.add(updateInfo);
+        }
+        return transferSuccess;
     }
 
     public static void union(String dirPath, String toFilePath, String fileName, boolean delSource) throws BusinessException {
+        union(dirPath, toFilePath, fileName, delSource, null);
+    }
+
+    /**
+     * 合并分片，使用FileChannel.transferTo零拷贝，数据不经过堆内存
+     *
+     * @param dirPath    分片目录
+     * @param toFilePath 目标文件
+     * @param fileName   文件名称，仅用于日志
+     * @param delSource  合并后是否删除分片目录
+     * @param expectedSize 上传时记录的文件总大小，合并后文件大小不一致时合并失败，校验在删除分片目录之前进行，为空时不校验
+     */
+    public static void union(String dirPath, String toFilePath, String fileName, boolean delSource, Long expectedSize) throws BusinessException {
         File dir = new File(dirPath);
         if (!dir.exists()) {
             throw new BusinessException("目录不存在");
         }
         File fileList[] = dir.listFiles();
-        File targetFile = new File(toFilePath);
-        RandomAccessFile writeFile = null;
-        try {
-            writeFile = new RandomAccessFile(targetFile, "rw");
-            byte[] b = new byte[1024 * 10];
+        long startTime = System.currentTimeMillis();
+        long chunkTotalSize = 0;
+        try (FileChannel writeChannel = FileChannel.open(Paths.get(toFilePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
             for (int i = 0; i < fileList.length; i++) {
-                int len = -1;
                 //创建读块文件的对象
                 File chunkFile = new File(dirPath + File.separator + i);
-                RandomAccessFile readFile = null;
-                try {
-                    readFile = new RandomAccessFile(chunkFile, "r");
-                    while ((len = readFile.read(b)) != -1) {
-                        writeFile.write(b, 0, len);
+                try (FileChannel readChannel = FileChannel.open(chunkFile.toPath(), StandardOpenOption.READ)) {
+                    long chunkSize = readChannel.size();
+                    long position = 0;
+                    //transferTo单次可能无法传输全部字节，需要循环
+                    while (position < chunkSize) {
+                        position += readChannel.transferTo(position, chunkSize - position, writeChannel);
                     }
+                    chunkTotalSize += chunkSize;
                 } catch (Exception e) {
                     logger.error("合并分片失败", e);
                     throw new BusinessException("合并文件失败");
-                } finally {
-                    readFile.close();
                 }
             }
+            if (expectedSize != null && writeChannel.size() != expectedSize) {
+                logger.error("合并文件:{}大小校验失败,上传大小:{},合并后大小:{}", fileName, expectedSize, writeChannel.size());
+                throw new BusinessException("合并文件大小校验失败");
+            }
+            long costTime = Math.max(System.currentTimeMillis() - startTime, 1);
+            logger.info("合并文件:{}完成,分片数:{},大小:{},耗时:{}ms,速度:{}MB/s", fileName, fileList.length, chunkTotalSize, costTime,
+                    String.format("%.2f", chunkTotalSize * 1000.0 / costTime / Constants.MB));
         } catch (Exception e) {
             logger.error("合并文件:{}失败", fileName, e);
             throw new BusinessException("合并文件" + fileName + "出错了");
         } finally {
-            try {
-                if (null != writeFile) {
-                    writeFile.close();
-                }
-            } catch (IOException e) {
-                logger.error("关闭流失败", e);
-            }
             if (delSource) {
                 if (dir.exists()) {
                     try {
                         FileUtils.deleteDirectory(dir);
                     } catch (IOException e) {
-                        e.printStackTrace();
+                        logger.error("删除分片目录:{}失败", dirPath, e);
                     }
                 }
             }
         }
     }
 
-    private void cutFile4Video(String fileId, String videoFilePath) {
-        //创建同名切片目录
-        File tsFolder = new File(videoFilePath.substring(0, videoFilePath.lastIndexOf(".")));
-        if (!tsFolder.exists()) {
-            tsFolder.mkdirs();
+    /**
+     * 无损编码或码率超过播放码率1.5倍的音频需要转码后播放
+     */
+    private boolean needAudioStream(MediaInfoDto mediaInfo) {
+        if (mediaInfo == null || mediaInfo.getAudioCodec() == null) {
+            return false;
         }
-
-        final String CMD_GET_CODE = "ffprobe -v error -select_streams v:0 -show_entries stream=codec_name %s";
-        String cmd = String.format(CMD_GET_CODE, videoFilePath);
-        String result = ProcessUtils.executeCommand(cmd, false);
-        result = result.replace("\n", "");
-        result = result.substring(result.indexOf("=") + 1);
-        String codec = result.substring(0, result.indexOf("["));
-
-        //转码
-        if ("hevc".equals(codec)) {
-            String newFileName = videoFilePath.substring(0, videoFilePath.lastIndexOf(".")) + "_" + videoFilePath.substring(videoFilePath.lastIndexOf("."));
-            new File(videoFilePath).renameTo(new File(newFileName));
-            String CMD_HEVC_264 = "ffmpeg -i %s -c:v libx264 -crf 20 %s";
-            cmd = String.format(CMD_HEVC_264, newFileName, videoFilePath);
-            ProcessUtils.executeCommand(cmd, false);
-            new File(newFileName).delete();
+        String codec = mediaInfo.getAudioCodec();
+        if (LOSSLESS_AUDIO_CODECS.contains(codec) || codec.startsWith("pcm_")) {
+            return true;
         }
+        return mediaInfo.getBitRate() != null && mediaInfo.getBitRate() > appConfig.getAudioStreamBitRate() * 1500L;
+    }
 
-        final String CMD_TRANSFER_2TS = "ffmpeg -y -i %s  -vcodec copy -acodec copy -bsf:v h264_mp4toannexb %s";
-        final String CMD_CUT_TS = "ffmpeg -i %s -c copy -map 0 -f segment -segment_list %s -segment_time 30 %s/%s_%%4d.ts";
-
-        String tsPath = tsFolder + "/" + Constants.TS_NAME;
-        //生成.ts
-        cmd = String.format(CMD_TRANSFER_2TS, videoFilePath, tsPath);
-        ProcessUtils.executeCommand(cmd, false);
-        //生成索引文件.m3u8 和切片.ts
-        cmd = String.format(CMD_CUT_TS, tsPath, tsFolder.getPath() + "/" + Constants.M3U8_NAME, tsFolder.getPath(), fileId);
-        ProcessUtils.executeCommand(cmd, false);
-        //删除index.ts
-        new File(tsPath).delete();
+    private void cutFile4Video(String fileId, String videoFilePath, MediaInfoDto mediaInfo) {
+        //创建同名切片目录
+        File tsFolder = new File(videoFilePath.substring(0, videoFilePath.lastIndexOf(".")));
+        hlsPackager.packageVideo(fileId, videoFilePath, tsFolder, false, mediaInfo);
     }
 
     @Override
@@ -685,6 +1108,7 @@ public class FileInfoServiceImpl implements FileInfoService {
             query.setDelFlag(FileDelFlagEnums.RECYCLE.getFlag());
         }
         List<FileInfo> fileInfoList = this.fileInfoMapper.selectList(query);
+        Long beforeUseSpace = this.fileInfoMapper.selectUseSpace(userId);
         List<String> delFileSubFolderFileIdList = new ArrayList<>();
         //找到所选文件子目录文件ID
         for (FileInfo fileInfo : fileInfoList) {
@@ -693,12 +1117,28 @@ public class FileInfoServiceImpl implements FileInfoService {
             }
         }
 
+        //子目录中的文件也要移出秒传索引，删除前查询
+        List<FileInfo> delMd5FileList = new ArrayList<>(fileInfoList);
+        if (!delFileSubFolderFileIdList.isEmpty()) {
+            FileInfoQuery subFileQuery = new FileInfoQuery();
+            subFileQuery.setUserId(userId);
+            subFileQuery.setFilePidArray(delFileSubFolderFileIdList.toArray(new String[0]));
+            subFileQuery.setFolderType(FileFolderTypeEnums.FILE.getType());
+            if (!adminOp) {
+                subFileQuery.setDelFlag(FileDelFlagEnums.DEL.getFlag());
+            }
+            delMd5FileList.addAll(this.fileInfoMapper.selectList(subFileQuery));
+        }
+
         //删除所选文件，子目录中的文件
         if (!delFileSubFolderFileIdList.isEmpty()) {
             this.fileInfoMapper.delFileBatch(userId, delFileSubFolderFileIdList, null, adminOp ? null : FileDelFlagEnums.DEL.getFlag());
         }
         //删除所选文件
         this.fileInfoMapper.delFileBatch(userId, null, Arrays.asList(fileIdArray), adminOp ? null : FileDelFlagEnums.RECYCLE.getFlag());
+        for (FileInfo fileInfo : delMd5FileList) {
+            fileMd5Index.remove(fileInfo.getFileMd5());
+        }
 
         Long useSpace = this.fileInfoMapper.selectUseSpace(userId);
         UserInfo userInfo = new UserInfo();
@@ -706,10 +1146,7 @@ public class FileInfoServiceImpl implements FileInfoService {
         this.userInfoMapper.updateByUserId(userInfo, userId);
 
         //设置缓存
-        UserSpaceDto userSpaceDto = redisComponent.getUserSpaceUse(userId);
-        userSpaceDto.setUseSpace(useSpace);
-        redisComponent.saveUserSpaceUse(userId, userSpaceDto);
-
+        changeUserSpaceUsed(userId, useSpace - beforeUseSpace);
     }
 
     @Override
@@ -762,6 +1199,7 @@ public class FileInfoServiceImpl implements FileInfoService {
             }
             findAllSubFile(copyFileList, item, shareUserId, cureentUserId, curDate, myFolderId);
         }
+        Long beforeUseSpace = this.fileInfoMapper.selectUseSpace(cureentUserId);
         this.fileInfoMapper.insertBatch(copyFileList);
 
         //更新空间
@@ -774,9 +1212,7 @@ public class FileInfoServiceImpl implements FileInfoService {
         userInfo.setUseSpace(useSpace);
         this.userInfoMapper.updateByUserId(userInfo, cureentUserId);
         //设置缓存
-        UserSpaceDto userSpaceDto = redisComponent.getUserSpaceUse(cureentUserId);
-        userSpaceDto.setUseSpace(useSpace);
-        redisComponent.saveUserSpaceUse(cureentUserId, userSpaceDto);
+        changeUserSpaceUsed(cureentUserId, useSpace - beforeUseSpace);
     }
 
     private void findAllSubFile(List<FileInfo> copyFileList, FileInfo fileInfo, String sourceUserId, String currentUserId, Date curDate, String newFilePid) {
@@ -806,6 +1242,14 @@ public class FileInfoServiceImpl implements FileInfoService {
 
     @Override
     public void deleteFileByUserId(String userId) {
+        //删除前移出秒传缓存，避免秒传到已删除用户的文件
+        FileInfoQuery infoQuery = new FileInfoQuery();
+        infoQuery.setUserId(userId);
+        infoQuery.setFolderType(FileFolderTypeEnums.FILE.getType());
+        List<FileInfo> fileInfoList = this.fileInfoMapper.selectList(infoQuery);
         this.fileInfoMapper.deleteFileByUserId(userId);
+        for (FileInfo fileInfo : fileInfoList) {
+            fileMd5Index.remove(fileInfo.getFileMd5());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.easypan.task;
+
+import com.easypan.component.FileTransferJobQueue;
+import com.easypan.entity.config.AppConfig;
+import com.easypan.entity.po.FileTransferJob;
+import com.easypan.service.FileInfoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 转码任务执行，定期从队列领取任务交给固定大小的线程池执行，并为执行中的任务续期
+ */
+@Component
+public class FileTransferJobTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileTransferJobTask.class);
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private FileTransferJobQueue fileTransferJobQueue;
+
+    @Resource
+    private FileInfoService fileInfoService;
+
+    private ExecutorService executorService;
+
+    /**
+     * 本节点执行中的任务
+     */
+    private final Set<Long> runningJobIds = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        executorService = Executors.newFixedThreadPool(appConfig.getTransferJobWorkers());
+    }
+
+    /**
+     * 领取任务，只领取空闲线程能执行的数量，其他任务留给其他节点
+     */
+    @Scheduled(fixedDelay = 1000 * 2)
+    public synchronized void poll() {
+        try {
+            List<FileTransferJob> jobList = fileTransferJobQueue.claim(appConfig.getTransferJobWorkers() - runningJobIds.size());
+            for (FileTransferJob job : jobList) {
+                runningJobIds.add(job.getJobId());
+                executorService.execute(() -> execute(job));
+            }
+        } catch (Exception e) {
+            logger.error("领取转码任务失败", e);
+        }
+    }
+
+    @Scheduled(fixedDelay = 1000 * 60)
+    public void renew() {
+        try {
+            fileTransferJobQueue.renew(new ArrayList<>(runningJobIds));
+        } catch (Exception e) {
+            logger.error("转码任务续期失败", e);
+        }
+    }
+
+    private void execute(FileTransferJob job) {
+        try {
+            Boolean success = fileInfoService.transferFile(job.getFileId(), job.getUserId(), fileTransferJobQueue.isLastAttempt(job));
+            if (success) {
+                fileTransferJobQueue.finish(job);
+            } else {
+                fileTransferJobQueue.fail(job);
+            }
+        } catch (Exception e) {
+            logger.error("转码任务:{}执行失败", job.getJobId(), e);
+            fileTransferJobQueue.fail(job);
+        } finally {
+            runningJobIds.remove(job.getJobId());
+        }
+    }
+
+    /**
+     * 停止时不再等待执行中的任务，未完成的任务超时后重新执行
+     */
+    @PreDestroy
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+}
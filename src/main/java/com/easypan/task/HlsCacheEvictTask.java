@@ -0,0 +1,34 @@
+package com.easypan.task;
+
+import com.easypan.component.HlsSegmentCache;
+import com.easypan.entity.config.AppConfig;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+@Component
+public class HlsCacheEvictTask {
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private HlsSegmentCache hlsSegmentCache;
+
+    @Scheduled(fixedDelay = 1000 * 60 * 5)
+    public void execute() {
+        if (!appConfig.getVideoHlsLazy()) {
+            return;
+        }
+        hlsSegmentCache.evict();
+    }
+
+    @Scheduled(fixedDelay = 1000 * 60)
+    public void renewPackagingLocks() {
+        if (!appConfig.getVideoHlsLazy()) {
+            return;
+        }
+        hlsSegmentCache.renewPackagingLocks();
+    }
+}
@@ -0,0 +1,34 @@
+package com.easypan.task;
+
+import com.easypan.component.RedisComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Set;
+
+/**
+ * 用户已用空间对账，修正缓存计数与数据库的偏差，清理上传已过期的空间预占
+ */
+@Component
+public class UserSpaceReconcileTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSpaceReconcileTask.class);
+
+    @Resource
+    private RedisComponent redisComponent;
+
+    @Scheduled(fixedDelay = 1000 * 60 * 10)
+    public void execute() {
+        Set<String> userIds = redisComponent.getUserSpaceUsedUserIds();
+        for (String userId : userIds) {
+            try {
+                redisComponent.reconcileUserSpace(userId);
+            } catch (Exception e) {
+                logger.error("用户:{}已用空间对账失败", userId, e);
+            }
+        }
+    }
+}
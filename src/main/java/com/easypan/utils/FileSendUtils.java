@@ -0,0 +1,375 @@
+package com.easypan.utils;
+
+import com.easypan.component.BandwidthLimiter;
+import com.easypan.entity.config.AppConfig;
+import com.easypan.entity.constants.Constants;
+import com.easypan.entity.dto.BandwidthLimitDto;
+import com.easypan.spring.ApplicationContextProvider;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 文件输出，所有文件接口统一处理Range请求（RFC 7233）
+ * 支持单个、多个（multipart/byteranges）和后缀范围，If-Range不匹配时返回整个文件，范围都无法满足时返回416
+ * 配置了file.offload.mode时只返回X-Accel-Redirect或X-Sendfile头，由前置服务器输出文件，工作线程在权限校验后立即释放
+ * 请求中有限速对象时按令牌桶输出，同一用户或分享的所有连接共用额度
+ * 根据路径、大小和修改时间生成ETag，If-None-Match/If-Modified-Since命中时返回304，只有响应头
+ * 容器支持sendfile时（tomcat nio）由容器在请求结束后通过FileChannel.transferTo直接从文件写入socket，数据不经过jvm堆
+ * 不支持时使用每个线程复用的大缓冲区，减少系统调用次数和临时对象
+ */
+public class FileSendUtils {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * 小于该大小的文件直接写出，sendfile的额外开销反而更大，和tomcat默认的sendfileSize一致
+     */
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * 一次请求最多的范围数量，超过时返回整个文件，防止大量细碎范围占用资源
+     */
+    private static final int MAX_RANGES = 16;
+
+    private static final String MULTIPART_BOUNDARY = "EASYPAN_BYTERANGES";
+
+    /**
+     * 按请求头中的Range输出文件
+     */
+    public static void serveFile(HttpServletRequest request, HttpServletResponse response, File file) throws IOException {
+        if (offload(request, response, file)) {
+            return;
+        }
+        long contentLength = file.length();
+        long lastModified = file.lastModified() / 1000 * 1000;
+        String etag = getETag(file, contentLength, lastModified);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        if (request != null && notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        String range = request == null ? null : request.getHeader("Range");
+        if (range == null || !ifRangeMatch(request, etag, lastModified)) {
+            sendFile(request, response, file);
+            return;
+        }
+        List<long[]> ranges = parseRange(range, contentLength);
+        if (ranges == null) {
+            //格式错误或范围过多时忽略Range
+            sendFile(request, response, file);
+            return;
+        }
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + contentLength);
+            response.setContentLengthLong(0);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            long[] single = ranges.get(0);
+            response.setHeader("Content-Range", "bytes " + single[0] + "-" + single[1] + "/" + contentLength);
+            sendFile(request, response, file, single[0], single[1] - single[0] + 1);
+            return;
+        }
+        sendMultipart(request, response, file, ranges, contentLength);
+    }
+
+    /**
+     * 交给前置服务器输出，Range、ETag和304由前置服务器处理
+     *
+     * @return 文件不在项目目录中、没有开启或者需要限速时返回false
+     */
+    private static boolean offload(HttpServletRequest request, HttpServletResponse response, File file) throws IOException {
+        AppConfig appConfig = getAppConfig();
+        if (appConfig == null || StringTools.isEmpty(appConfig.getFileOffloadMode())) {
+            return false;
+        }
+        String filePath = file.getCanonicalPath();
+        String projectFolder = new File(appConfig.getProjectFolder()).getCanonicalPath() + File.separator;
+        if (!filePath.startsWith(projectFolder)) {
+            return false;
+        }
+        //前置服务器只能按连接限速或不支持限速，多段和并发下载会超出用户共用的额度，需要限速时在应用内输出
+        if (getBandwidthLimit(request) != null) {
+            return false;
+        }
+        if (Constants.FILE_OFFLOAD_NGINX.equals(appConfig.getFileOffloadMode())) {
+            StringBuilder uri = new StringBuilder(appConfig.getFileOffloadNginxLocation());
+            if (uri.charAt(uri.length() - 1) != '/') {
+                uri.append("/");
+            }
+            String[] segments = filePath.substring(projectFolder.length()).split(Pattern.quote(File.separator));
+            for (int i = 0; i < segments.length; i++) {
+                if (i > 0) {
+                    uri.append("/");
+                }
+                uri.append(URLEncoder.encode(segments[i], "UTF-8").replace("+", "%20"));
+            }
+            response.setHeader("X-Accel-Redirect", uri.toString());
+            return true;
+        }
+        if (Constants.FILE_OFFLOAD_APACHE.equals(appConfig.getFileOffloadMode())) {
+            response.setHeader("X-Sendfile", filePath);
+            return true;
+        }
+        return false;
+    }
+
+    private static AppConfig getAppConfig() {
+        if (ApplicationContextProvider.getApplicationContext() == null) {
+            return null;
+        }
+        return (AppConfig) ApplicationContextProvider.getBean("appConfig");
+    }
+
+    /**
+     * 强ETag，文件路径、大小和修改时间都不变时内容不变
+     */
+    private static String getETag(File file, long contentLength, long lastModified) {
+        return "\"" + DigestUtils.md5Hex(file.getAbsolutePath() + ":" + contentLength + ":" + lastModified) + "\"";
+    }
+
+    /**
+     * 有If-None-Match时只比较ETag，没有时才比较If-Modified-Since
+     */
+    private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if ("*".equals(tag) || etag.equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * If-Range可以是ETag或者最后修改时间，文件修改过时返回整个文件
+     */
+    private static boolean ifRangeMatch(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            //弱ETag不能用于If-Range
+            return etag.equals(ifRange);
+        }
+        try {
+            return request.getDateHeader("If-Range") == lastModified;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 解析Range，返回排序并合并后的闭区间
+     *
+     * @return 格式错误或范围过多时返回null，没有可满足的范围时返回空集合
+     */
+    public static List<long[]> parseRange(String range, long contentLength) {
+        if (!range.startsWith(BYTES_UNIT)) {
+            return null;
+        }
+        String[] specs = range.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int index = spec.indexOf('-');
+                if (index == -1) {
+                    return null;
+                }
+                String startStr = spec.substring(0, index).trim();
+                String endStr = spec.substring(index + 1).trim();
+                long start;
+                long end;
+                if (startStr.isEmpty()) {
+                    //后缀范围，最后n个字节
+                    if (endStr.isEmpty()) {
+                        return null;
+                    }
+                    long suffixLength = Long.parseLong(endStr);
+                    if (suffixLength <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, contentLength - suffixLength);
+                    end = contentLength - 1;
+                } else {
+                    start = Long.parseLong(startStr);
+                    end = endStr.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endStr);
+                    if (start < 0 || end < start) {
+                        return null;
+                    }
+                    end = Math.min(end, contentLength - 1);
+                }
+                if (start >= contentLength) {
+                    continue;
+                }
+                ranges.add(new long[]{start, end});
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        ranges.sort(Comparator.comparingLong(item -> item[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] item : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && item[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], item[1]);
+            } else {
+                merged.add(item);
+            }
+        }
+        return merged;
+    }
+
+    private static void sendMultipart(HttpServletRequest request, HttpServletResponse response, File file, List<long[]> ranges, long contentLength)
+            throws IOException {
+        String partContentType = response.getContentType() == null ? "application/octet-stream" : response.getContentType();
+        List<byte[]> partHeaders = new ArrayList<>();
+        long totalLength = 0;
+        for (long[] item : ranges) {
+            String header = "\r\n--" + MULTIPART_BOUNDARY + "\r\nContent-Type: " + partContentType + "\r\nContent-Range: bytes " + item[0] + "-" + item[1]
+                    + "/" + contentLength + "\r\n\r\n";
+            byte[] headerBytes = header.getBytes(StandardCharsets.ISO_8859_1);
+            partHeaders.add(headerBytes);
+            totalLength += headerBytes.length + item[1] - item[0] + 1;
+        }
+        byte[] closeBytes = ("\r\n--" + MULTIPART_BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        totalLength += closeBytes.length;
+        response.setContentType("multipart/byteranges; boundary=" + MULTIPART_BOUNDARY);
+        response.setContentLengthLong(totalLength);
+        ServletOutputStream out = response.getOutputStream();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                out.write(partHeaders.get(i));
+                copy(channel, out, ranges.get(i)[0], ranges.get(i)[1] - ranges.get(i)[0] + 1, getBandwidthLimit(request));
+            }
+        }
+        out.write(closeBytes);
+        out.flush();
+    }
+
+    /**
+     * 输出整个文件
+     */
+    public static void sendFile(HttpServletRequest request, HttpServletResponse response, File file) throws IOException {
+        sendFile(request, response, file, 0, file.length());
+    }
+
+    /**
+     * 输出文件的一部分，调用前需要设置好状态码和其他响应头
+     *
+     * @param start  开始位置
+     * @param length 输出长度
+     */
+    public static void sendFile(HttpServletRequest request, HttpServletResponse response, File file, long start, long length) throws IOException {
+        response.setContentLengthLong(length);
+        if (length <= 0) {
+            return;
+        }
+        if (supportSendfile(request, response, length)) {
+            request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            return;
+        }
+        ServletOutputStream out = response.getOutputStream();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            copy(channel, out, start, length, getBandwidthLimit(request));
+        }
+        out.flush();
+    }
+
+    private static void copy(FileChannel channel, ServletOutputStream out, long start, long length, BandwidthLimitDto limit) throws IOException {
+        byte[] buffer = BUFFER.get();
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        BandwidthLimiter.Budget budget = limit == null ? null : ((BandwidthLimiter) ApplicationContextProvider.getBean("bandwidthLimiter")).newBudget(limit);
+        long position = start;
+        long end = start + length;
+        try {
+            while (position < end) {
+                int size = (int) Math.min(buffer.length, end - position);
+                if (budget != null) {
+                    size = budget.available(size);
+                }
+                byteBuffer.clear();
+                byteBuffer.limit(size);
+                int len = channel.read(byteBuffer, position);
+                if (len == -1) {
+                    break;
+                }
+                out.write(buffer, 0, len);
+                if (budget != null) {
+                    budget.consume(len);
+                }
+                position += len;
+            }
+        } finally {
+            if (budget != null) {
+                budget.release();
+            }
+        }
+    }
+
+    /**
+     * 限速时由应用输出，sendfile无法控制速度
+     */
+    private static boolean supportSendfile(HttpServletRequest request, HttpServletResponse response, long length) {
+        return request != null && length >= SENDFILE_MIN_SIZE && !response.isCommitted() && getBandwidthLimit(request) == null
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT));
+    }
+
+    private static BandwidthLimitDto getBandwidthLimit(HttpServletRequest request) {
+        return request == null ? null : (BandwidthLimitDto) request.getAttribute(Constants.BANDWIDTH_LIMIT_ATTRIBUTE);
+    }
+}
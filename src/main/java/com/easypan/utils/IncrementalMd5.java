@@ -0,0 +1,150 @@
+package com.easypan.utils;
+
+import java.util.Base64;
+
+/**
+ * 可导出中间状态的md5，用于分片上传时跨请求增量计算文件md5
+ * MessageDigest的中间状态无法序列化，这里按RFC 1321实现，状态可以保存到redis后在下一个分片请求中恢复
+ */
+public class IncrementalMd5 {
+
+    private static final int[] SHIFT = {
+            7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+            5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20,
+            4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+            6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21};
+
+    private static final int[] TABLE = new int[64];
+
+    static {
+        for (int i = 0; i < 64; i++) {
+            TABLE[i] = (int) (long) (Math.abs(Math.sin(i + 1)) * 4294967296L);
+        }
+    }
+
+    private int h0 = 0x67452301;
+    private int h1 = 0xefcdab89;
+    private int h2 = 0x98badcfe;
+    private int h3 = 0x10325476;
+
+    /**
+     * 已处理的字节数
+     */
+    private long count = 0;
+
+    private final byte[] buffer = new byte[64];
+
+    private final int[] block = new int[16];
+
+    public void update(byte[] input, int offset, int length) {
+        int bufferLength = (int) (count & 63);
+        count += length;
+        if (bufferLength > 0) {
+            int fill = Math.min(64 - bufferLength, length);
+            System.arraycopy(input, offset, buffer, bufferLength, fill);
+            offset += fill;
+            length -= fill;
+            if (bufferLength + fill < 64) {
+                return;
+            }
+            transform(buffer, 0);
+        }
+        while (length >= 64) {
+            transform(input, offset);
+            offset += 64;
+            length -= 64;
+        }
+        if (length > 0) {
+            System.arraycopy(input, offset, buffer, 0, length);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 结束计算，返回32位小写16进制md5，不改变当前状态
+     */
+    public String digestHex() {
+        IncrementalMd5 copy = fromState(exportState());
+        long bitLength = copy.count << 3;
+        int bufferLength = (int) (copy.count & 63);
+        int padLength = bufferLength < 56 ? 56 - bufferLength : 120 - bufferLength;
+        byte[] padding = new byte[padLength + 8];
+        padding[0] = (byte) 0x80;
+        for (int i = 0; i < 8; i++) {
+            padding[padLength + i] = (byte) (bitLength >>> (8 * i));
+        }
+        copy.update(padding, 0, padding.length);
+        StringBuilder result = new StringBuilder(32);
+        for (int h : new int[]{copy.h0, copy.h1, copy.h2, copy.h3}) {
+            for (int i = 0; i < 4; i++) {
+                result.append(String.format("%02x", (h >>> (8 * i)) & 0xff));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * 导出中间状态
+     */
+    public String exportState() {
+        int bufferLength = (int) (count & 63);
+        byte[] pending = new byte[bufferLength];
+        System.arraycopy(buffer, 0, pending, 0, bufferLength);
+        return h0 + "," + h1 + "," + h2 + "," + h3 + "," + count + "," + Base64.getEncoder().encodeToString(pending);
+    }
+
+    /**
+     * 从中间状态恢复，状态为空时返回新的计算
+     */
+    public static IncrementalMd5 fromState(String state) {
+        IncrementalMd5 md5 = new IncrementalMd5();
+        if (StringTools.isEmpty(state)) {
+            return md5;
+        }
+        String[] values = state.split(",", -1);
+        md5.h0 = Integer.parseInt(values[0]);
+        md5.h1 = Integer.parseInt(values[1]);
+        md5.h2 = Integer.parseInt(values[2]);
+        md5.h3 = Integer.parseInt(values[3]);
+        md5.count = Long.parseLong(values[4]);
+        byte[] pending = Base64.getDecoder().decode(values[5]);
+        System.arraycopy(pending, 0, md5.buffer, 0, pending.length);
+        return md5;
+    }
+
+    private void transform(byte[] input, int offset) {
+        for (int i = 0; i < 16; i++) {
+            int index = offset + i * 4;
+            block[i] = (input[index] & 0xff) | (input[index + 1] & 0xff) << 8 | (input[index + 2] & 0xff) << 16 | (input[index + 3] & 0xff) << 24;
+        }
+        int a = h0, b = h1, c = h2, d = h3;
+        for (int i = 0; i < 64; i++) {
+            int f, g;
+            if (i < 16) {
+                f = (b & c) | (~b & d);
+                g = i;
+            } else if (i < 32) {
+                f = (d & b) | (~d & c);
+                g = (5 * i + 1) & 15;
+            } else if (i < 48) {
+                f = b ^ c ^ d;
+                g = (3 * i + 5) & 15;
+            } else {
+                f = c ^ (b | ~d);
+                g = (7 * i) & 15;
+            }
+            int temp = d;
+            d = c;
+            c = b;
+            b = b + Integer.rotateLeft(a + f + TABLE[i] + block[g], SHIFT[i]);
+            a = temp;
+        }
+        h0 += a;
+        h1 += b;
+        h2 += c;
+        h3 += d;
+    }
+}
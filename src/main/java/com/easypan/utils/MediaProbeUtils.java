@@ -0,0 +1,48 @@
+package com.easypan.utils;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.easypan.entity.dto.MediaInfoDto;
+
+import java.math.BigDecimal;
+
+/**
+ * 使用ffprobe的json输出获取音视频信息
+ */
+public class MediaProbeUtils {
+
+    public static MediaInfoDto probe(String filePath) {
+        String[] cmd = {"ffprobe", "-v", "error", "-print_format", "json", "-show_format", "-show_streams", filePath};
+        String result = ProcessUtils.executeCommand(cmd, false);
+        JSONObject probeJson = JSONObject.parseObject(result);
+        MediaInfoDto mediaInfo = new MediaInfoDto();
+        JSONObject format = probeJson.getJSONObject("format");
+        if (format != null) {
+            String duration = format.getString("duration");
+            if (!StringTools.isEmpty(duration)) {
+                mediaInfo.setDuration(new BigDecimal(duration).movePointRight(3).longValue());
+            }
+            mediaInfo.setBitRate(format.getLong("bit_rate"));
+        }
+        JSONArray streams = probeJson.getJSONArray("streams");
+        if (streams == null) {
+            return mediaInfo;
+        }
+        //只取第一个视频流和第一个音频流，封面图片流不算视频
+        for (int i = 0; i < streams.size(); i++) {
+            JSONObject stream = streams.getJSONObject(i);
+            String codecType = stream.getString("codec_type");
+            JSONObject disposition = stream.getJSONObject("disposition");
+            boolean attachedPic = disposition != null && Integer.valueOf(1).equals(disposition.getInteger("attached_pic"));
+            if ("video".equals(codecType) && mediaInfo.getVideoCodec() == null && !attachedPic) {
+                mediaInfo.setVideoCodec(stream.getString("codec_name"));
+                mediaInfo.setWidth(stream.getInteger("width"));
+                mediaInfo.setHeight(stream.getInteger("height"));
+            } else if ("audio".equals(codecType) && mediaInfo.getAudioCodec() == null) {
+                mediaInfo.setAudioCodec(stream.getString("codec_name"));
+                mediaInfo.setAudioChannels(stream.getInteger("channels"));
+            }
+        }
+        return mediaInfo;
+    }
+}
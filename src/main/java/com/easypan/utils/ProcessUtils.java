@@ -1,112 +1,184 @@
 package com.easypan.utils;
 
+import com.easypan.entity.config.AppConfig;
 import com.easypan.exception.BusinessException;
+import com.easypan.spring.ApplicationContextProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+/**
+ * 外部进程执行，限制同时运行的ffmpeg/ffprobe进程数，超时结束整个进程树
+ * 所有运行中的进程登记在同一个集合中，程序退出时由唯一的钩子统一结束
+ */
 public class ProcessUtils {
     private static final Logger logger = LoggerFactory.getLogger(ProcessUtils.class);
 
-    public static String executeCommand(String cmd, Boolean outprintLog) throws BusinessException {
-        if (StringTools.isEmpty(cmd)) {
+    private static final Integer DEFAULT_MAX_CONCURRENT = 4;
+
+    private static final Long DEFAULT_TIMEOUT_SECONDS = 3600L;
+
+    /**
+     * 运行中的进程
+     */
+    private static final Set<Process> RUNNING_PROCESS = ConcurrentHashMap.newKeySet();
+
+    private static volatile Semaphore semaphore;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Process process : RUNNING_PROCESS) {
+                destroyTree(process);
+            }
+        }, "process-killer"));
+    }
+
+    /**
+     * 使用默认超时时间执行命令
+     */
+    public static String executeCommand(String[] cmd, Boolean outprintLog) throws BusinessException {
+        AppConfig appConfig = getAppConfig();
+        return executeCommand(cmd, outprintLog, appConfig == null ? DEFAULT_TIMEOUT_SECONDS : appConfig.getProcessTimeoutSeconds());
+    }
+
+    /**
+     * 执行命令，参数逐个传入，路径中有空格也不会被拆分
+     *
+     * @param cmd            命令及参数
+     * @param outprintLog    是否打印输出
+     * @param timeoutSeconds 超时时间，超时后结束进程树
+     * @return 标准输出，错误输出单独记录，不混入标准输出，ffprobe的json输出不会被警告信息破坏
+     */
+    public static String executeCommand(String[] cmd, Boolean outprintLog, long timeoutSeconds) throws BusinessException {
+        if (cmd == null || cmd.length == 0) {
             logger.error("--- 指令执行失败，因为要执行的FFmpeg指令为空！ ---");
             return null;
         }
-
-        Runtime runtime = Runtime.getRuntime();
+        String cmdStr = String.join(" ", cmd);
+        Semaphore permits = getSemaphore();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("视频转换失败");
+        }
         Process process = null;
+        File outputFile = null;
+        File errorFile = null;
         try {
-            process = Runtime.getRuntime().exec(cmd);
-            // 执行ffmpeg指令
-            // 取出输出流和错误流的信息
-            // 注意：必须要取出ffmpeg在执行命令过程中产生的输出信息，如果不取的话当输出流信息填满jvm存储输出留信息的缓冲区时，线程就回阻塞住
-            PrintStream errorStream = new PrintStream(process.getErrorStream());
-            PrintStream inputStream = new PrintStream(process.getInputStream());
-            errorStream.start();
-            inputStream.start();
-            // 等待ffmpeg命令执行完
-            process.waitFor();
-            // 获取执行结果字符串
-            String result = errorStream.stringBuffer.append(inputStream.stringBuffer + "\n").toString();
-            // 输出执行的命令信息
-
+            //输出重定向到文件，不需要额外的线程读取输出流，也不会因为缓冲区写满而阻塞
+            outputFile = File.createTempFile("easypan_process_", ".log");
+            errorFile = File.createTempFile("easypan_process_", ".err.log");
+            ProcessBuilder processBuilder = new ProcessBuilder(cmd);
+            processBuilder.redirectOutput(outputFile);
+            processBuilder.redirectError(errorFile);
+            process = processBuilder.start();
+            RUNNING_PROCESS.add(process);
+            process.getOutputStream().close();
+            if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                destroyTree(process);
+                logger.error("执行命令:{}，超过{}秒未完成，已结束", cmdStr, timeoutSeconds);
+                throw new BusinessException("视频转换超时");
+            }
+            String result = readOutput(outputFile);
+            if (process.exitValue() != 0) {
+                logger.error("执行命令:{}，退出码:{},执行结果:{},错误输出:{}", cmdStr, process.exitValue(), result, readOutput(errorFile));
+                throw new BusinessException("视频转换失败");
+            }
             if (outprintLog) {
-                logger.info("执行命令:{}，已执行完毕,执行结果:{}", cmd, result);
+                logger.info("执行命令:{}，已执行完毕,执行结果:{},错误输出:{}", cmdStr, result, readOutput(errorFile));
             } else {
-                logger.info("执行命令:{}，已执行完毕", cmd);
+                logger.info("执行命令:{}，已执行完毕", cmdStr);
             }
             return result;
+        } catch (BusinessException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            destroyTree(process);
+            throw new BusinessException("视频转换失败");
         } catch (Exception e) {
-            // logger.error("执行命令失败:{} ", e.getMessage());
-            e.printStackTrace();
+            logger.error("执行命令失败:{}", cmdStr, e);
             throw new BusinessException("视频转换失败");
         } finally {
-            if (null != process) {
-                ProcessKiller ffmpegKiller = new ProcessKiller(process);
-                runtime.addShutdownHook(ffmpegKiller);
+            if (process != null) {
+                RUNNING_PROCESS.remove(process);
+            }
+            if (outputFile != null) {
+                outputFile.delete();
             }
+            if (errorFile != null) {
+                errorFile.delete();
+            }
+            permits.release();
         }
     }
 
-    /**
-     * 在程序退出前结束已有的FFmpeg进程
-     */
-    private static class ProcessKiller extends Thread {
-        private Process process;
-
-        public ProcessKiller(Process process) {
-            this.process = process;
-        }
-
-        @Override
-        public void run() {
-            this.process.destroy();
+    private static String readOutput(File outputFile) throws IOException {
+        StringBuilder result = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(outputFile)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                result.append(line).append("\n");
+            }
         }
+        return result.toString();
     }
 
-
     /**
-     * 用于取出ffmpeg线程执行过程中产生的各种输出和错误流的信息
+     * 结束进程及其子进程，Java 8没有进程树接口时只结束当前进程
      */
-    static class PrintStream extends Thread {
-        InputStream inputStream = null;
-        BufferedReader bufferedReader = null;
-        StringBuffer stringBuffer = new StringBuffer();
-
-        public PrintStream(InputStream inputStream) {
-            this.inputStream = inputStream;
+    private static void destroyTree(Process process) {
+        if (process == null) {
+            return;
         }
-
-        @Override
-        public void run() {
-            try {
-                if (null == inputStream) {
-                    return;
-                }
-                bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-                String line = null;
-                while ((line = bufferedReader.readLine()) != null) {
-                    stringBuffer.append(line);
-                }
-            } catch (Exception e) {
-                logger.error("读取输入流出错了！错误信息：" + e.getMessage());
-            } finally {
-                try {
-                    if (null != bufferedReader) {
-                        bufferedReader.close();
-                    }
-                    if (null != inputStream) {
-                        inputStream.close();
+        try {
+            Method descendantsMethod = Process.class.getMethod("descendants");
+            Method destroyMethod = Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+            try (Stream<?> descendants = (Stream<?>) descendantsMethod.invoke(process)) {
+                descendants.forEach(handle -> {
+                    try {
+                        destroyMethod.invoke(handle);
+                    } catch (Exception e) {
+                        logger.error("结束子进程失败", e);
                     }
-                } catch (IOException e) {
-                    logger.error("调用PrintStream读取输出流后，关闭流时出错！");
+                });
+            }
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            //Java 8
+        } catch (Exception e) {
+            logger.error("结束子进程失败", e);
+        }
+        process.destroyForcibly();
+    }
+
+    private static Semaphore getSemaphore() {
+        if (semaphore == null) {
+            synchronized (ProcessUtils.class) {
+                if (semaphore == null) {
+                    AppConfig appConfig = getAppConfig();
+                    semaphore = new Semaphore(appConfig == null ? DEFAULT_MAX_CONCURRENT : appConfig.getProcessMaxConcurrent(), true);
                 }
             }
         }
+        return semaphore;
+    }
+
+    private static AppConfig getAppConfig() {
+        if (ApplicationContextProvider.getApplicationContext() == null) {
+            return null;
+        }
+        return (AppConfig) ApplicationContextProvider.getBean("appConfig");
     }
 }
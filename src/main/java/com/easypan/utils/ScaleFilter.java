@@ -1,5 +1,6 @@
 package com.easypan.utils;
 
+import com.easypan.entity.dto.MediaInfoDto;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,25 +9,45 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 
 public class ScaleFilter {
     private static final Logger logger = LoggerFactory.getLogger(ScaleFilter.class);
 
+    /**
+     * 拖动预览图的宽度
+     */
+    private static final Integer SPRITE_WIDTH = 160;
 
+    /**
+     * 雪碧图每行的预览图数量
+     */
+    private static final Integer SPRITE_COLUMNS = 10;
+
+    /**
+     * 预览图最小间隔，单位秒
+     */
+    private static final Integer SPRITE_MIN_INTERVAL = 10;
+
+    /**
+     * 预览图数量上限，视频较长时加大间隔
+     */
+    private static final Integer SPRITE_MAX_FRAMES = 300;
+
+
+    /**
+     * 使用ffmpeg生成缩略图，用于ImageIO无法解码的图片，宽度不超过缩略图宽度时保持原尺寸
+     */
     public static Boolean createThumbnailWidthFFmpeg(File file, int thumbnailWidth, File targetFile, Boolean delSource) {
         try {
-            BufferedImage src = ImageIO.read(file);
-            //thumbnailWidth 缩略图的宽度   thumbnailHeight 缩略图的高度
-            int sorceW = src.getWidth();
-            int sorceH = src.getHeight();
-            //小于 指定高宽不压缩
-            if (sorceW <= thumbnailWidth) {
-                return false;
+            String[] cmd = {"ffmpeg", "-i", file.getAbsolutePath(), "-vf", "scale='min(" + thumbnailWidth + ",iw)':-1", targetFile.getAbsolutePath(), "-y"};
+            ProcessUtils.executeCommand(cmd, false);
+            if (delSource) {
+                FileUtils.forceDelete(file);
             }
-            compressImage(file, thumbnailWidth, targetFile, delSource);
-            return true;
+            return targetFile.exists();
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.error("生成缩略图失败", e);
         }
         return false;
     }
@@ -42,17 +63,81 @@ public class ScaleFilter {
 
     public static void createCover4Video(File sourceFile, Integer width, File targetFile) {
         try {
-            String cmd = "ffmpeg -i %s -y -vframes 1 -vf scale=%d:%d/a %s";
-            ProcessUtils.executeCommand(String.format(cmd, sourceFile.getAbsoluteFile(), width, width, targetFile.getAbsoluteFile()), false);
+            String[] cmd = {"ffmpeg", "-i", sourceFile.getAbsolutePath(), "-y", "-vframes", "1", "-vf", "scale=" + width + ":" + width + "/a",
+                    targetFile.getAbsolutePath()};
+            ProcessUtils.executeCommand(cmd, false);
         } catch (Exception e) {
             logger.error("生成视频封面失败", e);
         }
     }
 
+    /**
+     * 生成拖动进度条时的预览雪碧图和WebVTT缩略图轨道
+     * 只解码关键帧，按固定间隔取帧拼成一张图，vtt中每段时间指向图中的一个区域
+     *
+     * @param spriteName vtt中引用的雪碧图名称，和获取vtt的接口一样以文件id开头，不是存储的文件名
+     */
+    public static Boolean createSprite4Video(File sourceFile, MediaInfoDto mediaInfo, File spriteFile, File vttFile, String spriteName) {
+        if (mediaInfo == null || mediaInfo.getDuration() == null || mediaInfo.getWidth() == null || mediaInfo.getHeight() == null
+                || mediaInfo.getDuration() <= 0 || mediaInfo.getWidth() <= 0) {
+            return false;
+        }
+        try {
+            long durationSeconds = (mediaInfo.getDuration() + 999) / 1000;
+            long interval = Math.max(SPRITE_MIN_INTERVAL, (durationSeconds + SPRITE_MAX_FRAMES - 1) / SPRITE_MAX_FRAMES);
+            int frames = (int) Math.max(1, (durationSeconds + interval - 1) / interval);
+            int columns = Math.min(SPRITE_COLUMNS, frames);
+            int rows = (frames + columns - 1) / columns;
+            int height = Math.max(2, Math.round(SPRITE_WIDTH * mediaInfo.getHeight() / (float) mediaInfo.getWidth() / 2) * 2);
+            String filter = "fps=1/" + interval + ",scale=" + SPRITE_WIDTH + ":" + height + ",tile=" + columns + "x" + rows;
+            String[] cmd = {"ffmpeg", "-skip_frame", "nokey", "-i", sourceFile.getAbsolutePath(), "-y", "-an", "-sn", "-vf", filter,
+                    "-frames:v", "1", "-q:v", "5", spriteFile.getAbsolutePath()};
+            ProcessUtils.executeCommand(cmd, false);
+
+            StringBuilder vtt = new StringBuilder("WEBVTT\n\n");
+            for (int i = 0; i < frames; i++) {
+                long start = i * interval * 1000;
+                long end = Math.min((i + 1) * interval * 1000, mediaInfo.getDuration());
+                vtt.append(formatVttTime(start)).append(" --> ").append(formatVttTime(end)).append("\n");
+                //相对路径，和vtt文件使用同一个接口获取
+                vtt.append(spriteName).append("#xywh=").append(i % columns * SPRITE_WIDTH).append(",").append(i / columns * height)
+                        .append(",").append(SPRITE_WIDTH).append(",").append(height).append("\n\n");
+            }
+            FileUtils.writeStringToFile(vttFile, vtt.toString(), StandardCharsets.UTF_8);
+            return true;
+        } catch (Exception e) {
+            logger.error("生成视频预览图失败", e);
+            return false;
+        }
+    }
+
+    private static String formatVttTime(long millis) {
+        return String.format("%02d:%02d:%02d.%03d", millis / 3600000, millis / 60000 % 60, millis / 1000 % 60, millis % 1000);
+    }
+
+    /**
+     * 生成在线播放用的音频，转为指定码率的aac
+     * 先写入临时文件再改名，播放时不会读到转码了一半的文件
+     */
+    public static Boolean createStream4Audio(File sourceFile, Integer bitRate, File targetFile) {
+        File tempFile = new File(targetFile.getParentFile(), "." + targetFile.getName());
+        try {
+            String[] cmd = {"ffmpeg", "-i", sourceFile.getAbsolutePath(), "-y", "-vn", "-sn", "-map", "0:a:0", "-c:a", "aac", "-b:a", bitRate + "k",
+                    "-movflags", "+faststart", "-f", "mp4", tempFile.getAbsolutePath()};
+            ProcessUtils.executeCommand(cmd, false);
+            return tempFile.renameTo(targetFile);
+        } catch (Exception e) {
+            logger.error("生成音频播放文件失败", e);
+            return false;
+        } finally {
+            tempFile.delete();
+        }
+    }
+
     public static void compressImage(File sourceFile, Integer width, File targetFile, Boolean delSource) {
         try {
-            String cmd = "ffmpeg -i %s -vf scale=%d:-1 %s -y";
-            ProcessUtils.executeCommand(String.format(cmd, sourceFile.getAbsoluteFile(), width, targetFile.getAbsoluteFile()), false);
+            String[] cmd = {"ffmpeg", "-i", sourceFile.getAbsolutePath(), "-vf", "scale=" + width + ":-1", targetFile.getAbsolutePath(), "-y"};
+            ProcessUtils.executeCommand(cmd, false);
             if (delSource) {
                 FileUtils.forceDelete(sourceFile);
             }